@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import lordfokas.stargatetech2.modules.IContentModule;
 import lordfokas.stargatetech2.modules.ModuleAutomation;
 import lordfokas.stargatetech2.modules.ModuleCore;
+import lordfokas.stargatetech2.modules.core.CommandChunkUsage;
+import lordfokas.stargatetech2.modules.transport.CommandDialStats;
 import lordfokas.stargatetech2.reference.ModReference;
 import lordfokas.stargatetech2.util.ChunkLoader;
 import lordfokas.stargatetech2.util.Config;
@@ -25,6 +27,7 @@ import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.common.registry.GameRegistry;
 
@@ -112,6 +115,12 @@ public class StargateTech2 {
 		config.save();
 	}
 	
+	@EventHandler
+	public void onServerStarting(FMLServerStartingEvent event){
+		event.registerServerCommand(new CommandChunkUsage());
+		event.registerServerCommand(new CommandDialStats());
+	}
+	
 	@EventHandler
 	public void onServerStart(FMLServerStartedEvent event){
 		for(IContentModule module : modules){
@@ -7,6 +7,8 @@ public abstract class BusPacket<R>{
 	private final short sender;
 	private final short target;
 	private final boolean hasLIP;
+	private int protocolID;
+	private BusPacketLIP plainText;
 	
 	/**
 	 * @param sender The address of the Device that is sending this packet.
@@ -18,6 +20,7 @@ public abstract class BusPacket<R>{
 		this.sender = sender;
 		this.target = target;
 		this.hasLIP = hasLIP;
+		this.protocolID = BusProtocols.getProtocolID(this.getClass());
 	}
 	
 	/**
@@ -38,20 +41,28 @@ public abstract class BusPacket<R>{
 	 * @return The ID of the protocol this packet corresponds to.
 	 */
 	public final int getProtocolID(){
-		return BusProtocols.getProtocolID(this.getClass());
+		if(protocolID < 0){ // registered after this packet was made.
+			protocolID = BusProtocols.getProtocolID(this.getClass());
+		}
+		return protocolID;
 	}
 	
 	/**
+	 * The conversion is only done once, every receiver gets the same LIP packet.
+	 * 
 	 * @return A plain text (LIP) version of this packet, if it has one.
 	 */
 	public final BusPacketLIP getPlainText(){
 		if(this instanceof BusPacketLIP){
 			return (BusPacketLIP) this;
 		}else if(hasLIP){
-			BusPacketLIP lip = new BusPacketLIP(sender, target);
-			fillPlainText(lip);
-			lip.finish();
-			return lip;
+			if(plainText == null){
+				BusPacketLIP lip = new BusPacketLIP(sender, target);
+				fillPlainText(lip);
+				lip.finish();
+				plainText = lip;
+			}
+			return plainText;
 		}
 		return null;
 	}
@@ -1,7 +1,11 @@
 package lordfokas.stargatetech2.api.bus;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * LIP - Lazy Intercom Protocol<br>
@@ -11,14 +15,23 @@ import java.util.Hashtable;
  * <br>
  * Any packet can choose to be convertible to this format, allowing for any class anywhere to
  * read data from a packet which has an unknown and / or private class by asking it to convert to
- * a text format. This removes all the problems with type casting and such.
+ * a text format. This removes all the problems with type casting and such.<br>
+ * <br>
+ * Keys are case insensitive. They are stored lower case and interned, in a pair of small arrays,
+ * so looking one up is a short scan comparing references.
  * 
  * @author LordFokas
  */
 public final class BusPacketLIP extends BusPacket<String> {
+	private static final int MAX_FOLDED = 1024;
+	private static final ConcurrentHashMap<String, String> folded = new ConcurrentHashMap();
+	
 	private boolean isEditable = true;
 	private LIPMetadata metadata = null;
-	private Hashtable<String, String> data = new Hashtable();
+	private String[] keys = new String[4];
+	private String[] values = new String[4];
+	private int size = 0;
+	private List<String> entries;
 	
 	/**
 	 * Defines optional metadata that helps sorting this packet out / figuring out what to do with this.
@@ -74,16 +87,55 @@ public final class BusPacketLIP extends BusPacket<String> {
 	 * As soon as you call this, it can no longer be modified.
 	 */
 	public void finish(){
+		if(!isEditable) return;
 		isEditable = false;
+		keys = Arrays.copyOf(keys, size);
+		values = Arrays.copyOf(values, size);
+		entries = Collections.unmodifiableList(Arrays.asList(keys));
 	}
 	
 	/**
 	 * @return A list of all the keys for the data on this packet.
 	 */
 	public ArrayList<String> getEntryList(){
-		ArrayList<String> entries = new ArrayList();
-		entries.addAll(data.keySet());
-		return entries;
+		ArrayList<String> list = new ArrayList(size);
+		for(int i = 0; i < size; i++){
+			list.add(keys[i]);
+		}
+		return list;
+	}
+	
+	/**
+	 * Same as getEntryList(), without copying anything once the packet is finished.
+	 * 
+	 * @return A read only list of all the keys for the data on this packet.
+	 */
+	public List<String> getEntries(){
+		if(entries != null) return entries;
+		return Collections.unmodifiableList(getEntryList());
+	}
+	
+	/**
+	 * @return How many entries this packet has.
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * @return The key of the entry at this index, in the order they were added.
+	 */
+	public String getKey(int index){
+		if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return keys[index];
+	}
+	
+	/**
+	 * @return The value of the entry at this index, in the order they were added.
+	 */
+	public String getValue(int index){
+		if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return values[index];
 	}
 	
 	/**
@@ -94,9 +146,16 @@ public final class BusPacketLIP extends BusPacket<String> {
 	 * @param val The data to send.
 	 */
 	public void set(String key, String val){
-		if(isEditable && !data.containsKey(key)){
-			data.put(key.toLowerCase(), val);
+		if(!isEditable) return;
+		key = fold(key);
+		if(indexOf(key) >= 0) return;
+		if(size == keys.length){
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
 		}
+		keys[size] = key;
+		values[size] = val;
+		size++;
 	}
 	
 	/**
@@ -107,6 +166,27 @@ public final class BusPacketLIP extends BusPacket<String> {
 	 * @return The data stored under that key, if any, null otherwise.
 	 */
 	public String get(String key){
-		return data.get(key.toLowerCase());
+		int index = indexOf(fold(key));
+		return index < 0 ? null : values[index];
+	}
+	
+	private int indexOf(String key){
+		for(int i = 0; i < size; i++){
+			if(keys[i] == key) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return The lower case, interned version of this key.
+	 */
+	private static String fold(String key){
+		String result = folded.get(key);
+		if(result == null){
+			result = key.toLowerCase(Locale.ENGLISH).intern();
+			// Keys mostly come from code and repeat a lot, but computers can send anything.
+			if(folded.size() < MAX_FOLDED) folded.put(key, result);
+		}
+		return result;
 	}
-}
\ No newline at end of file
+}
@@ -1,9 +1,23 @@
 package lordfokas.stargatetech2.api.bus;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 
 public final class BusProtocols {	
-	private static final ArrayList<Class<? extends BusPacket>> protocols = new ArrayList();
+	private static final Object lock = new Object();
+	private static int next = 0;
+	
+	/** The id a class was given, -1 until it's registered. */
+	private static final class Protocol{
+		volatile int id = -1;
+	}
+	
+	// Lookups happen for every packet, the ClassValue keeps the id right on the class.
+	private static final ClassValue<Protocol> protocols = new ClassValue<Protocol>(){
+		@Override
+		protected Protocol computeValue(Class<?> type){
+			return new Protocol();
+		}
+	};
 	
 	/**
 	 * Add a protocol to the list, if it doesn't exist yet.
@@ -12,20 +26,37 @@ public final class BusProtocols {
 	 * @return the id of the protocol we just added.
 	 */
 	public static final int addProtocol(Class<? extends BusPacket> packetClass){
-		if(!protocols.contains(packetClass)){
-			protocols.add(packetClass);
+		synchronized(lock){
+			Protocol protocol = protocols.get(packetClass);
+			if(protocol.id < 0){
+				protocol.id = next++;
+			}
+			return protocol.id;
 		}
-		return protocols.indexOf(packetClass);
 	}
 	
 	/**
 	 * Gives you the id of the protocol correspondig to a given packet class.
 	 * 
 	 * @param packetClass the class of the packet for which we want to know the protocol ID.
-	 * @return the ID of the protocol corresponding to the packet class.
+	 * @return the ID of the protocol corresponding to the packet class, or -1 if it isn't registered.
 	 */
 	public static final int getProtocolID(Class<? extends BusPacket> packetClass){
-		return protocols.indexOf(packetClass);
+		return protocols.get(packetClass).id;
+	}
+	
+	/**
+	 * Builds the set of protocols for an {@link IBusDriverFilter}.
+	 * 
+	 * @param protocolIDs the IDs of the protocols to accept.
+	 * @return a set with those protocols.
+	 */
+	public static final BitSet accept(int... protocolIDs){
+		BitSet set = new BitSet();
+		for(int id : protocolIDs){
+			if(id >= 0) set.set(id);
+		}
+		return set;
 	}
 	
 	private BusProtocols(){}
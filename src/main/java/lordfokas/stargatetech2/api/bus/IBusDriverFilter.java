@@ -0,0 +1,18 @@
+package lordfokas.stargatetech2.api.bus;
+
+import java.util.BitSet;
+
+/**
+ * Optional addition to an IBusDriver that only handles a few protocols.
+ * The interface reads the set once, when it's created, and packets
+ * of any other protocol are dropped without asking the driver.
+ * canHandlePacket() is still called for packets that pass.
+ */
+public interface IBusDriverFilter extends IBusDriver {
+	/**
+	 * Use BusProtocols.accept() to build it.
+	 * 
+	 * @return The IDs of the protocols this driver can handle.
+	 */
+	public BitSet getAcceptedProtocols();
+}
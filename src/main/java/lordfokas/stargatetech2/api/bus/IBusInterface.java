@@ -17,6 +17,16 @@ public interface IBusInterface {
 	 */
 	public void sendAllPackets();
 	
+	/**
+	 * Same as sendAllPackets(), but the packets are only delivered
+	 * at the end of the tick, a limited amount per network each tick.
+	 * Use this for status broadcasts that don't need an immediate
+	 * response; the packets' responses are not filled in when this returns.
+	 * Identical LIP broadcasts from the same interface that are still
+	 * waiting are only delivered once.
+	 */
+	public void queueAllPackets();
+	
 	/**
 	 * Serialize this object.
 	 * 
@@ -0,0 +1,177 @@
+package lordfokas.stargatetech2.api.bus;
+
+import java.nio.charset.Charset;
+
+import lordfokas.stargatetech2.api.bus.BusPacketLIP.LIPMetadata;
+
+/**
+ * Compact binary form of a LIP packet, for handing a whole packet
+ * to something outside the game (like a computer) in one go.<br>
+ * <br>
+ * Layout:
+ * <ul>
+ * <li>1 byte: format version, currently 1.</li>
+ * <li>2 bytes: sender address, 2 bytes: target address.</li>
+ * <li>1 byte: 1 if metadata follows, 0 otherwise.</li>
+ * <li>If there is metadata: mod id, device name and player name, as strings.</li>
+ * <li>A varint with the number of entries, followed by each key and value, as strings.</li>
+ * </ul>
+ * Strings are UTF-8, prefixed with their length in bytes plus one as a varint; a prefix of 0 means null.
+ * Varints are unsigned, 7 bits per byte, least significant first.
+ */
+public final class LIPCodec {
+	public static final byte VERSION = 1;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private LIPCodec(){}
+	
+	/**
+	 * @param lip The packet to encode. It doesn't need to be finished.
+	 * @return The packet in binary form.
+	 */
+	public static byte[] encode(BusPacketLIP lip){
+		int size = lip.size();
+		LIPMetadata metadata = lip.getMetadata();
+		byte[][] strings = new byte[size * 2 + 3][];
+		int length = 6 + varintLength(size);
+		int n = 0;
+		if(metadata != null){
+			length += measure(strings, n++, metadata.modID);
+			length += measure(strings, n++, metadata.deviceName);
+			length += measure(strings, n++, metadata.playerName);
+		}
+		for(int i = 0; i < size; i++){
+			length += measure(strings, n++, lip.getKey(i));
+			length += measure(strings, n++, lip.getValue(i));
+		}
+		byte[] out = new byte[length];
+		int pos = 0;
+		out[pos++] = VERSION;
+		out[pos++] = (byte)(lip.getSender() >> 8);
+		out[pos++] = (byte) lip.getSender();
+		out[pos++] = (byte)(lip.getTarget() >> 8);
+		out[pos++] = (byte) lip.getTarget();
+		out[pos++] = (byte)(metadata != null ? 1 : 0);
+		int from = 0;
+		if(metadata != null){
+			for(; from < 3; from++) pos = write(out, pos, strings[from]);
+		}
+		pos = writeVarint(out, pos, size);
+		for(int i = from; i < n; i++){
+			pos = write(out, pos, strings[i]);
+		}
+		return out;
+	}
+	
+	/**
+	 * @param data A packet in binary form.
+	 * @return The packet, finished.
+	 * @throws IllegalArgumentException If the data is not a valid packet.
+	 */
+	public static BusPacketLIP decode(byte[] data){
+		return decode(data, 0, data.length);
+	}
+	
+	/**
+	 * @param data An array holding a packet in binary form.
+	 * @param offset Where the packet starts.
+	 * @param length How many bytes the packet takes.
+	 * @return The packet, finished.
+	 * @throws IllegalArgumentException If the data is not a valid packet.
+	 */
+	public static BusPacketLIP decode(byte[] data, int offset, int length){
+		Reader in = new Reader(data, offset, offset + length);
+		byte version = in.readByte();
+		if(version != VERSION) throw new IllegalArgumentException("Unknown LIP format version: " + version);
+		short sender = in.readShort();
+		short target = in.readShort();
+		BusPacketLIP lip = new BusPacketLIP(sender, target);
+		if(in.readByte() != 0){
+			lip.setMetadata(new LIPMetadata(in.readString(), in.readString(), in.readString()));
+		}
+		int size = in.readVarint();
+		for(int i = 0; i < size; i++){
+			String key = in.readString();
+			if(key == null) throw new IllegalArgumentException("LIP keys can't be null");
+			lip.set(key, in.readString());
+		}
+		if(in.pos != in.end) throw new IllegalArgumentException("Trailing data after LIP packet");
+		lip.finish();
+		return lip;
+	}
+	
+	private static int measure(byte[][] strings, int index, String string){
+		if(string == null) return 1;
+		byte[] bytes = string.getBytes(UTF8);
+		strings[index] = bytes;
+		return varintLength(bytes.length + 1) + bytes.length;
+	}
+	
+	private static int write(byte[] out, int pos, byte[] string){
+		if(string == null) return writeVarint(out, pos, 0);
+		pos = writeVarint(out, pos, string.length + 1);
+		System.arraycopy(string, 0, out, pos, string.length);
+		return pos + string.length;
+	}
+	
+	private static int varintLength(int value){
+		int length = 1;
+		while((value >>>= 7) != 0) length++;
+		return length;
+	}
+	
+	private static int writeVarint(byte[] out, int pos, int value){
+		while((value & ~0x7F) != 0){
+			out[pos++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+	
+	private static final class Reader{
+		final byte[] data;
+		final int end;
+		int pos;
+		
+		Reader(byte[] data, int pos, int end){
+			if(pos < 0 || end > data.length || pos > end) throw new IllegalArgumentException("Bad offset or length");
+			this.data = data;
+			this.pos = pos;
+			this.end = end;
+		}
+		
+		byte readByte(){
+			if(pos >= end) throw new IllegalArgumentException("LIP packet is truncated");
+			return data[pos++];
+		}
+		
+		short readShort(){
+			return (short)(((readByte() & 0xFF) << 8) | (readByte() & 0xFF));
+		}
+		
+		int readVarint(){
+			int value = 0;
+			for(int shift = 0; shift < 35; shift += 7){
+				byte b = readByte();
+				value |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0){
+					if(value < 0) break;
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Bad length in LIP packet");
+		}
+		
+		String readString(){
+			int length = readVarint();
+			if(length == 0) return null;
+			length--;
+			if(length > end - pos) throw new IllegalArgumentException("LIP packet is truncated");
+			String string = new String(data, pos, length, UTF8);
+			pos += length;
+			return string;
+		}
+	}
+}
@@ -2,7 +2,13 @@ package lordfokas.stargatetech2.api.stargate;
 
 public class Address {
 	public static final Address ERROR = new Address(new Symbol[]{Symbol.MIG, Symbol.MIG, Symbol.MIG, Symbol.MIG, Symbol.MIG});
+	private static final int LENGTH_BITS = 4;
+	private static final int SYMBOL_BITS = 6;
+	private static final long SYMBOL_MASK = (1L << SYMBOL_BITS) - 1;
+	private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+	
 	private Symbol[] symbols;
+	private final long packed;
 	
 	public static Address create(Symbol[] symbols){
 		try{
@@ -27,8 +33,39 @@ public class Address {
 		}
 	}
 	
+	/**
+	 * Rebuilds an address from its packed representation.
+	 * 
+	 * @param packed A value previously returned by {@link #pack()}.
+	 * @return The unpacked address, or {@link #ERROR} if the value doesn't describe a valid address.
+	 */
+	public static Address unpack(long packed){
+		int length = (int)(packed & LENGTH_MASK);
+		Symbol[] symbols = new Symbol[length];
+		for(int i = 0; i < length; i++){
+			symbols[i] = Symbol.get((int)((packed >>> (LENGTH_BITS + i * SYMBOL_BITS)) & SYMBOL_MASK));
+		}
+		return create(symbols);
+	}
+	
 	private Address(Symbol[] symbols){
 		this.symbols = symbols;
+		long p = symbols.length;
+		for(int i = 0; i < symbols.length; i++){
+			p |= ((long) symbols[i].ordinal()) << (LENGTH_BITS + i * SYMBOL_BITS);
+		}
+		this.packed = p;
+	}
+	
+	/**
+	 * Packs this address into a single long. The lowest 4 bits hold the length,
+	 * followed by 6 bits per symbol. Two addresses are equal if and only if
+	 * their packed values are equal.
+	 * 
+	 * @return This address as a packed long.
+	 */
+	public long pack(){
+		return packed;
 	}
 	
 	public int length(){
@@ -63,21 +100,14 @@ public class Address {
 	@Override
 	public boolean equals(Object o){
 		if(o instanceof Address){
-			Address a = (Address) o;
-			if(a.length() == length()){
-				for(int i = 0; i < length(); i++){
-					if(symbols[i] != a.symbols[i]){
-						return false;
-					}
-				}
-				return true;
-			}
+			return ((Address) o).packed == packed;
 		}
 		return false;
 	}
 	
 	@Override
 	public int hashCode(){
-		return length();
+		long h = packed * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
 	}
 }
\ No newline at end of file
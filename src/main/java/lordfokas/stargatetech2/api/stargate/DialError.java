@@ -18,5 +18,10 @@ public enum DialError{
 	// Logic
 	DIALING_EVENT_CANCELED,
 	SUCCESSFULLY_DIALED,
-	UNKNOWN_LOGIC_ERROR;
+	UNKNOWN_LOGIC_ERROR,
+	
+	// Added later, kept at the end so the ordinals above never change.
+	DIALING_STARTED,
+	DIALING_RATE_LIMITED,
+	CHUNKLOADING_BUDGET_EXCEEDED;
 }
@@ -20,6 +20,27 @@ public abstract class DialEvent extends StargateEvent {
 		}
 	}
 	
+	/**
+	 * Fired as a dialing sequence moves through its stages.
+	 * Sequences span several ticks, so a Pre event is followed by any number
+	 * of these before the final Success or Error.
+	 */
+	public static class Progress extends DialEvent {
+		public enum Stage{
+			RESOLVED,		// Both addresses map to gates in different, loaded worlds.
+			LOADING_CHUNKS,	// The chunks around both gates were requested.
+			CHUNKS_READY,	// All those chunks are loaded and forced.
+			VALIDATED		// Both gates were found and can connect.
+		}
+		
+		public final Stage stage;
+		
+		public Progress(Address src, Address dst, int dur, Stage stage) {
+			super(src, dst, dur);
+			this.stage = stage;
+		}
+	}
+	
 	public static class Success extends DialEvent {
 		public Success(Address src, Address dst, int dur) {
 			super(src, dst, dur);
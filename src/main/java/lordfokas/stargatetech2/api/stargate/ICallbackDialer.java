@@ -0,0 +1,18 @@
+package lordfokas.stargatetech2.api.stargate;
+
+/**
+ * Optionally implemented by an {@link ITileStargateBase} that can report
+ * the final outcome of a dialing sequence.
+ * 
+ * Kept apart from ITileStargateBase so existing implementations of it don't break.
+ * Check for it with instanceof before calling.
+ */
+public interface ICallbackDialer extends ITileStargateBase{
+	/**
+	 * Same as {@link #dial(Address, int, DialMethod)}, but the final outcome of the
+	 * dialing sequence is delivered to the callback a few ticks later.
+	 * 
+	 * @param callback Receives the result of the sequence. May be null.
+	 */
+	public DialError dial(Address address, int timeout, DialMethod method, IDialCallback callback);
+}
@@ -0,0 +1,17 @@
+package lordfokas.stargatetech2.api.stargate;
+
+/**
+ * Receives the outcome of a dialing sequence.
+ * 
+ * Dialing takes several ticks (the chunks around both gates must be ready
+ * before a wormhole can be opened), so the result is delivered here
+ * once the sequence finishes, on the server thread.
+ */
+public interface IDialCallback {
+	/**
+	 * @param source The address of the dialing Stargate.
+	 * @param destination The address that was dialed.
+	 * @param result {@link DialError#SUCCESSFULLY_DIALED} if a wormhole was opened, the reason it failed otherwise.
+	 */
+	public void onDialResult(Address source, Address destination, DialError result);
+}
@@ -2,6 +2,11 @@ package lordfokas.stargatetech2.api.stargate;
 
 import net.minecraft.world.World;
 
+/**
+ * The queries ({@link #addressExists(Address)}, {@link #getAddressOf(World, int, int, int)},
+ * {@link #findNearestStargate(World, int, int, int, int)} and {@link #prefixExists(Symbol[])})
+ * can be called from any thread. Off the server thread they may be up to one tick behind.
+ */
 public interface IStargateNetwork {
 	/**
 	 * @return Whether the Stargate Network is loaded (working) or not.
@@ -24,7 +24,7 @@ public interface ITileStargateBase extends ITileStargate{
 	 * 
 	 * @param address The address this Stargate should dial.
 	 * @param timeout How many seconds the connection will last. (1 - 38; default: 38);
-	 * @return whether the dialing sequence started (true) or failed (false).
+	 * @return {@link DialError#DIALING_STARTED} if the dialing sequence started, the reason it didn't otherwise.
 	 */
 	public DialError dial(Address address, int timeout, DialMethod method);
 }
\ No newline at end of file
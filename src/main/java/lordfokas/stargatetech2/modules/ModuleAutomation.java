@@ -3,6 +3,7 @@ package lordfokas.stargatetech2.modules;
 import lordfokas.stargatetech2.StargateTech2;
 import lordfokas.stargatetech2.modules.automation.AutomationEventHandler;
 import lordfokas.stargatetech2.modules.automation.BlockBusCable;
+import lordfokas.stargatetech2.modules.automation.BusDeliveryQueue;
 import lordfokas.stargatetech2.util.Stacks;
 import net.minecraft.init.Blocks;
 import net.minecraft.item.ItemBlock;
@@ -33,7 +34,9 @@ public class ModuleAutomation implements IContentModule {
 	}
 
 	@Override public void onServerStart(){}
-	@Override public void onServerStop(){}
+	@Override public void onServerStop(){
+		BusDeliveryQueue.clear();
+	}
 
 	@Override
 	public String getModuleName(){
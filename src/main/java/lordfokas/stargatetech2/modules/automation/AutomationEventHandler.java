@@ -1,21 +1,41 @@
 package lordfokas.stargatetech2.modules.automation;
 
 import lordfokas.stargatetech2.api.bus.BusEvent;
-import net.minecraft.util.EnumFacing;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 
 public class AutomationEventHandler {
 	
 	@SubscribeEvent
 	public void remapAbstractBus(BusEvent evt){
 		if(!evt.world.isRemote){
+			BusTopology topology = BusTopology.get(evt.world);
 			if(evt instanceof BusEvent.RemoveFromNetwork){
-				for(EnumFacing dir : EnumFacing.values()){
-					RecursiveBusRemapper.scan(evt.world, evt.pos.offset(dir));
+				if(topology.isKnownCable(evt.pos)){
+					topology.onCableRemoved(evt.pos);
+				}else{
+					topology.onDeviceRemoved(evt.pos);
 				}
 			}else if(evt instanceof BusEvent.AddToNetwork){
-				RecursiveBusRemapper.scan(evt.world, evt.pos);
+				if(topology.isCable(evt.pos)){
+					topology.onCableAdded(evt.pos);
+				}else{
+					topology.onDeviceAdded(evt.pos);
+				}
 			}
 		}
 	}
+	
+	@SubscribeEvent
+	public void onWorldUnload(WorldEvent.Unload evt){
+		BusTopology.unload(evt.getWorld());
+	}
+	
+	@SubscribeEvent
+	public void onServerTick(TickEvent.ServerTickEvent evt){
+		if(evt.phase == TickEvent.Phase.END){
+			BusDeliveryQueue.drain();
+		}
+	}
 }
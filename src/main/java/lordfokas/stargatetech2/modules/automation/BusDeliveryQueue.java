@@ -0,0 +1,151 @@
+package lordfokas.stargatetech2.modules.automation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+import lordfokas.stargatetech2.api.bus.BusPacket;
+import lordfokas.stargatetech2.api.bus.BusPacketLIP;
+import lordfokas.stargatetech2.api.bus.BusPacketLIP.LIPMetadata;
+import lordfokas.stargatetech2.util.ConfigServer;
+
+/**
+ * Holds packets sent with {@link BusInterface#queueAllPackets()} until the end of the tick.
+ *
+ * Packets wait on the network of the interface that sent them, and each network delivers
+ * at most {@link ConfigServer#busPacketsPerTick} of them per tick; the rest wait for the next one.
+ * A LIP broadcast that is identical to one the same interface already has waiting is dropped,
+ * since delivering it twice would tell nobody anything new.
+ */
+public final class BusDeliveryQueue {
+	static final class Delivery{
+		final BusInterface sender;
+		final BusPacket packet;
+		final Object key;
+		
+		Delivery(BusInterface sender, BusPacket packet, Object key){
+			this.sender = sender;
+			this.packet = packet;
+			this.key = key;
+		}
+	}
+	
+	/**
+	 * Identifies a LIP broadcast by its sender and contents. The hash is cheap and built
+	 * without copying anything; the contents are only compared entry by entry when it matches.
+	 */
+	private static final class Key{
+		private final BusInterface sender;
+		private final BusPacketLIP lip;
+		private final int hash;
+		
+		Key(BusInterface sender, BusPacketLIP lip, int hash){
+			this.sender = sender;
+			this.lip = lip;
+			this.hash = hash;
+		}
+		
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj){
+			if(!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return sender == other.sender && hash == other.hash && sameContents(lip, other.lip);
+		}
+	}
+	
+	private static final ArrayList<BusNetwork> pending = new ArrayList();
+	private static final HashSet<Key> coalesced = new HashSet();
+	private static final IdentityHashMap<BusNetwork, Boolean> drained = new IdentityHashMap();
+	
+	private BusDeliveryQueue(){}
+	
+	/**
+	 * Queues a packet for delivery at the end of the tick.
+	 */
+	static void enqueue(BusInterface sender, BusPacket packet){
+		BusNetwork network = sender.getNetwork();
+		if(network == null) return; // nobody would hear it anyway.
+		Key key = coalesceKey(sender, packet);
+		if(key != null && !coalesced.add(key)) return;
+		ArrayDeque<Delivery> queue = network.getQueue();
+		if(queue.isEmpty()) pending.add(network);
+		queue.addLast(new Delivery(sender, packet, key));
+	}
+	
+	private static Key coalesceKey(BusInterface sender, BusPacket packet){
+		if(!(packet instanceof BusPacketLIP) || packet.getTarget() != (short)0xFFFF) return null;
+		BusPacketLIP lip = (BusPacketLIP) packet;
+		// Entries are summed, so the order they were added in doesn't matter.
+		int hash = 0;
+		for(int i = 0; i < lip.size(); i++){
+			hash += lip.getKey(i).hashCode() * 31 + hash(lip.getValue(i));
+		}
+		LIPMetadata metadata = lip.getMetadata();
+		if(metadata != null){
+			hash = hash * 31 + hash(metadata.modID);
+			hash = hash * 31 + hash(metadata.deviceName);
+		}
+		return new Key(sender, lip, System.identityHashCode(sender) * 31 + hash);
+	}
+	
+	private static int hash(String value){
+		return value == null ? 0 : value.hashCode();
+	}
+	
+	private static boolean sameContents(BusPacketLIP a, BusPacketLIP b){
+		if(a.size() != b.size()) return false;
+		LIPMetadata ma = a.getMetadata(), mb = b.getMetadata();
+		if((ma == null) != (mb == null)) return false;
+		if(ma != null && !(same(ma.modID, mb.modID) && same(ma.deviceName, mb.deviceName))) return false;
+		for(int i = 0; i < a.size(); i++){
+			if(!same(a.getValue(i), b.get(a.getKey(i)))) return false;
+		}
+		return true;
+	}
+	
+	private static boolean same(String a, String b){
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	/**
+	 * Delivers queued packets, up to the budget of each network.
+	 */
+	public static void drain(){
+		if(pending.isEmpty()) return;
+		int size = pending.size();
+		for(int n = 0; n < size; n++){
+			BusNetwork network = pending.get(n).find();
+			if(drained.put(network, Boolean.TRUE) != null) continue; // joined with one we already did.
+			ArrayDeque<Delivery> queue = network.getQueue();
+			for(int budget = ConfigServer.busPacketsPerTick; budget > 0 && !queue.isEmpty(); budget--){
+				Delivery delivery = queue.removeFirst();
+				if(delivery.key != null) coalesced.remove(delivery.key);
+				if(delivery.sender.isValid()) delivery.sender.sendPacket(delivery.packet);
+			}
+		}
+		// Keep networks that still have packets, including ones that got their first during delivery.
+		ArrayList<BusNetwork> all = new ArrayList(pending);
+		pending.clear();
+		drained.clear();
+		for(BusNetwork network : all){
+			network = network.find();
+			if(!network.getQueue().isEmpty() && drained.put(network, Boolean.TRUE) == null) pending.add(network);
+		}
+		drained.clear();
+	}
+	
+	public static void clear(){
+		for(BusNetwork network : pending){
+			network.find().getQueue().clear();
+		}
+		pending.clear();
+		coalesced.clear();
+		drained.clear();
+	}
+}
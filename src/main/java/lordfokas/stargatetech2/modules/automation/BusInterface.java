@@ -1,7 +1,8 @@
 package lordfokas.stargatetech2.modules.automation;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Set;
 
 import lordfokas.stargatetech2.api.bus.BusPacket;
@@ -10,37 +11,60 @@ import lordfokas.stargatetech2.api.bus.BusPacketNetScan.Device;
 import lordfokas.stargatetech2.api.bus.BusProtocols;
 import lordfokas.stargatetech2.api.bus.IBusDevice;
 import lordfokas.stargatetech2.api.bus.IBusDriver;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.api.bus.IBusInterface;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 public final class BusInterface implements IBusInterface{
 	private static final byte BROADCAST		= (byte) 0xFF;
 	private static final byte PROMISCUOUS	= (byte) 0x00;
 	
-	private final Set<RemoteDevice>[] addressingTable;
-	private Set<RemoteDevice> addressCache;
+	private final BusNetwork[] networks = new BusNetwork[6];
 	private final IBusDevice device;
 	private final IBusDriver driver;
+	private final BitSet accepted;
+	private boolean resolved = false;
 	
 	public BusInterface(IBusDevice device, IBusDriver driver){
 		this.device = device;
 		this.driver = driver;
-		addressingTable = new Set[6];
-		addressCache = new HashSet();
+		this.accepted = driver instanceof IBusDriverFilter ? (BitSet)((IBusDriverFilter)driver).getAcceptedProtocols().clone() : null;
 	}
 	
-	public void setAddressingTable(EnumFacing side, Set<RemoteDevice> table){
-		addressingTable[side.ordinal()] = table;
-		rebuildAddressCache();
+	/**
+	 * Called by the {@link BusTopology} when the cable on this side joins a network or goes away.
+	 */
+	public void setNetwork(EnumFacing side, BusNetwork network){
+		networks[side.ordinal()] = network;
 	}
 	
-	private void rebuildAddressCache(){
-		addressCache = new HashSet();
-		for(Set<RemoteDevice> table : addressingTable)
-			if(table != null) addressCache.addAll(table);
+	/**
+	 * Networks aren't saved, so the first time this interface sends after being loaded
+	 * it looks up what it's plugged into. After that the topology keeps it up to date.
+	 * Only the sides this interface is exposed on are looked at, same as the topology does.
+	 */
+	private void resolveNetworks(World w){
+		BusTopology topology = BusTopology.get(w);
+		BlockPos pos = new BlockPos(device.getXCoord(), device.getYCoord(), device.getZCoord());
+		for(EnumFacing side : EnumFacing.values()){
+			if(networks[side.ordinal()] == null && isExposedOn(side)){
+				networks[side.ordinal()] = topology.getNetworkFacing(pos, side);
+			}
+		}
+		resolved = true;
+	}
+	
+	private boolean isExposedOn(EnumFacing side){
+		IBusInterface[] interfaces = device.getInterfaces(side);
+		if(interfaces == null) return false;
+		for(IBusInterface i : interfaces){
+			if(i == this) return true;
+		}
+		return false;
 	}
 
 	@Override
@@ -53,28 +77,79 @@ public final class BusInterface implements IBusInterface{
 		}
 	}
 	
-	private void sendPacket(BusPacket packet){
-		ArrayList memory = new ArrayList();
+	@Override
+	public void queueAllPackets(){
+		if(driver.isInterfaceEnabled()){
+			BusPacket packet;
+			while((packet = driver.getNextPacketToSend()) != null){
+				BusDeliveryQueue.enqueue(this, packet);
+			}
+		}
+	}
+	
+	/**
+	 * @return The network queued packets from this interface wait on, or null if it isn't on any.
+	 */
+	BusNetwork getNetwork(){
+		if(!resolved) resolveNetworks(device.getWorld());
+		for(BusNetwork network : networks){
+			if(network != null) return network.find();
+		}
+		return null;
+	}
+	
+	void sendPacket(BusPacket packet){
 		World w = device.getWorld();
-		for(RemoteDevice device : addressCache){
-			TileEntity te = w.getTileEntity(device.pos);
-			if(te instanceof IBusDevice){
-				IBusInterface[] interfaces = ((IBusDevice)te).getInterfaces(device.side);
-				if(interfaces == null){
-					continue;
-				}
-				for(IBusInterface i : interfaces){
-					if(i instanceof BusInterface && !memory.contains(i)){
-						((BusInterface)i).recvPacket(packet);
-						memory.add(i);
-					}
-				}
+		if(!resolved) resolveNetworks(w);
+		// Kept per send, as handling a packet can send another one before this send is done.
+		Set<BusInterface> delivered = Collections.newSetFromMap(new IdentityHashMap());
+		short target = packet.getTarget();
+		byte net  = (byte)((target & 0xFF00) >> 8);
+		byte host = (byte) (target & 0x00FF);
+		boolean unicast = net != BROADCAST && host != BROADCAST;
+		for(int s = 0; s < networks.length; s++){
+			if(networks[s] == null) continue;
+			BusNetwork network = networks[s].find();
+			if(unicast){
+				// the only interfaces that can match: exact, and promiscuous on either half or both.
+				deliver(network.route(w, target), packet, delivered);
+				deliver(network.route(w, (short)(target & 0x00FF)), packet, delivered);
+				deliver(network.route(w, (short)(target & 0xFF00)), packet, delivered);
+				deliver(network.route(w, (short) 0x0000), packet, delivered);
+			}else{
+				deliver(network.route(w), packet, delivered);
+			}
+		}
+	}
+	
+	private void deliver(BusInterface[] interfaces, BusPacket packet, Set<BusInterface> delivered){
+		for(BusInterface i : interfaces){
+			// never to the sending device, on any of its interfaces.
+			if(i.device != device && i.isValid() && delivered.add(i)){
+				i.recvPacket(packet);
 			}
 		}
 	}
 	
+	boolean isValid(){
+		return !(device instanceof TileEntity) || !((TileEntity)device).isInvalid();
+	}
+	
+	/**
+	 * Must be called after the driver's address changes, so the networks
+	 * this interface is on route packets to the new address.
+	 */
+	public void onAddressChanged(){
+		if(!resolved) resolveNetworks(device.getWorld());
+		for(BusNetwork network : networks){
+			if(network != null) network.find().invalidateRoutes();
+		}
+	}
+	
 	public void recvPacket(BusPacket packet){
-		boolean mapping = packet.getProtocolID() == BusProtocols.PROTOCOL_NETSCAN;
+		int protocol = packet.getProtocolID();
+		boolean mapping = protocol == BusProtocols.PROTOCOL_NETSCAN;
+		if(!mapping && accepted != null && (protocol < 0 || !accepted.get(protocol))) return;
 		if(!mapping && !driver.isInterfaceEnabled()) return;
 		// split addresses into net and host address.
 		// uses /8 netmask in a 16-bit address.
@@ -94,7 +169,7 @@ public final class BusInterface implements IBusInterface{
 				short adrs = driver.getInterfaceAddress();
 				boolean on = driver.isInterfaceEnabled();
 				((BusPacketNetScan)packet).addDevice(new Device(dsc, snm, adrs, on, device.getXCoord(), device.getYCoord(), device.getZCoord()));
-			}else if(driver.canHandlePacket(sender, packet.getProtocolID(), packet.hasPlainText())){
+			}else if(driver.canHandlePacket(sender, protocol, packet.hasPlainText())){
 				driver.handlePacket(packet);
 			}
 		}
@@ -102,42 +177,13 @@ public final class BusInterface implements IBusInterface{
 
 	@Override
 	public void writeToNBT(NBTTagCompound nbt, String tag){
-		NBTTagCompound data = new NBTTagCompound();
-		for(int i = 0; i < addressingTable.length; i++){
-			NBTTagCompound table = new NBTTagCompound();
-			Set<RemoteDevice> tbl = addressingTable[i];
-			if(tbl == null){
-				table.setInteger("size", 0);
-			}else{
-				table.setInteger("size", tbl.size());
-				int j = 0;
-				for(RemoteDevice rdev : tbl){
-					table.setTag("addr"+j, rdev.serializeNBT());
-				}
-			}
-			data.setTag("table"+i, table);
-		}
-		nbt.setTag(tag, data);
+		// Networks are mapped from the world when needed, there is nothing to save.
+		nbt.setTag(tag, new NBTTagCompound());
 	}
 
 	@Override
 	public void readFromNBT(NBTTagCompound nbt, String tag){
-		NBTTagCompound data = nbt.getCompoundTag(tag);
-		for(int i = 0; i < addressingTable.length; i++){
-			NBTTagCompound table = data.getCompoundTag("table"+i);
-			Set<RemoteDevice> tbl = null;
-			int sz = table.getInteger("size");
-			if(sz != 0){
-				tbl = new HashSet();
-				for(int j = 0; j < sz; j++){
-					RemoteDevice device = new RemoteDevice(null, null);
-					device.deserializeNBT(table.getCompoundTag("addr"+j));
-					tbl.add(device);
-				}
-			}
-			addressingTable[i] = tbl;
-		}
-		rebuildAddressCache();
+		// Older saves kept addressing tables here; they are rebuilt from the world instead.
 	}
 	
 	public short getAddress(){
@@ -0,0 +1,205 @@
+package lordfokas.stargatetech2.modules.automation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import lordfokas.stargatetech2.api.bus.IBusDevice;
+import lordfokas.stargatetech2.api.bus.IBusInterface;
+import lordfokas.stargatetech2.util.LongObjectMap;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.World;
+
+/**
+ * A group of connected bus cables and the devices plugged into them.
+ *
+ * Networks are joined union-find style: the smaller network is linked under the larger one
+ * and hands over its devices, and {@link #find()} leads from any network that was ever part
+ * of a group to the one that currently holds it. Interfaces keep whichever network they were
+ * given and look up the current one when they send, so a merge never has to touch them.
+ *
+ * Each network also keeps a routing table of the interfaces on it, by address, so a packet
+ * goes straight to the interfaces it's meant for. The table is rebuilt whenever devices come
+ * or go, an interface changes address, or one of its interfaces turns out to be gone.
+ */
+public final class BusNetwork {
+	private static final BusInterface[] NONE = new BusInterface[0];
+	
+	private static final class Routes{
+		final BusInterface[] all;
+		final LongObjectMap<BusInterface[]> byAddress;
+		
+		Routes(BusInterface[] all, LongObjectMap<BusInterface[]> byAddress){
+			this.all = all;
+			this.byAddress = byAddress;
+		}
+	}
+	
+	private BusNetwork parent = this;
+	private int cables = 0;
+	private Set<RemoteDevice> devices = new HashSet();
+	private RemoteDevice[] members;
+	private Routes routes;
+	private ArrayDeque<BusDeliveryQueue.Delivery> queue;
+	
+	/**
+	 * @return The network currently standing for this one.
+	 */
+	public BusNetwork find(){
+		BusNetwork network = this;
+		while(network.parent != network){
+			network.parent = network.parent.parent;
+			network = network.parent;
+		}
+		return network;
+	}
+	
+	/**
+	 * Joins two networks, by size.
+	 * 
+	 * @return The network standing for both.
+	 */
+	static BusNetwork union(BusNetwork a, BusNetwork b){
+		a = a.find();
+		b = b.find();
+		if(a == b) return a;
+		if(a.cables < b.cables){
+			BusNetwork swap = a;
+			a = b;
+			b = swap;
+		}
+		if(a.devices.size() < b.devices.size()){
+			Set<RemoteDevice> swap = a.devices;
+			a.devices = b.devices;
+			b.devices = swap;
+		}
+		a.devices.addAll(b.devices);
+		a.cables += b.cables;
+		a.members = null;
+		a.routes = null;
+		b.parent = a;
+		b.devices = null;
+		b.members = null;
+		b.routes = null;
+		if(b.queue != null){
+			if(a.queue == null) a.queue = b.queue;
+			else a.queue.addAll(b.queue);
+			b.queue = null;
+		}
+		return a;
+	}
+	
+	void addCables(int count){
+		cables += count;
+	}
+	
+	void addDevice(RemoteDevice device){
+		if(devices.add(device)) invalidate();
+	}
+	
+	void removeDevice(RemoteDevice device){
+		if(devices.remove(device)) invalidate();
+	}
+	
+	private void invalidate(){
+		members = null;
+		routes = null;
+	}
+	
+	/**
+	 * Drops the routing table, for when an interface on this network changed address.
+	 */
+	void invalidateRoutes(){
+		routes = null;
+	}
+	
+	/**
+	 * @return The packets waiting to be delivered on this network.
+	 */
+	ArrayDeque<BusDeliveryQueue.Delivery> getQueue(){
+		if(queue == null) queue = new ArrayDeque();
+		return queue;
+	}
+	
+	/**
+	 * @return Every device on this network. The array is shared, do not modify it.
+	 */
+	public RemoteDevice[] getMembers(){
+		if(members == null){
+			members = devices.toArray(new RemoteDevice[devices.size()]);
+		}
+		return members;
+	}
+	
+	/**
+	 * @return Every interface on this network.
+	 */
+	BusInterface[] route(World world){
+		return lookup(world, 0, true);
+	}
+	
+	/**
+	 * @return The interfaces on this network with exactly this address.
+	 */
+	BusInterface[] route(World world, short address){
+		return lookup(world, address & 0xFFFF, false);
+	}
+	
+	private BusInterface[] lookup(World world, int address, boolean all){
+		Routes table = routes(world);
+		BusInterface[] found = all ? table.all : table.byAddress.get(address);
+		if(found == null) return NONE;
+		for(BusInterface i : found){
+			if(!i.isValid()){
+				// A device was unloaded and came back as a new tile, look everything up again.
+				routes = null;
+				table = routes(world);
+				found = all ? table.all : table.byAddress.get(address);
+				return found == null ? NONE : found;
+			}
+		}
+		return found;
+	}
+	
+	private Routes routes(World world){
+		if(routes != null) return routes;
+		boolean complete = true;
+		IdentityHashMap<BusInterface, Boolean> seen = new IdentityHashMap();
+		ArrayList<BusInterface> all = new ArrayList();
+		LongObjectMap<ArrayList<BusInterface>> grouped = new LongObjectMap();
+		for(RemoteDevice device : getMembers()){
+			TileEntity te = world.getTileEntity(device.pos);
+			if(!(te instanceof IBusDevice)){
+				complete = false;
+				continue;
+			}
+			IBusInterface[] interfaces = ((IBusDevice)te).getInterfaces(device.side);
+			if(interfaces == null) continue;
+			for(IBusInterface i : interfaces){
+				if(!(i instanceof BusInterface) || seen.put((BusInterface)i, Boolean.TRUE) != null) continue;
+				BusInterface bus = (BusInterface) i;
+				all.add(bus);
+				int address = bus.getAddress() & 0xFFFF;
+				ArrayList<BusInterface> list = grouped.get(address);
+				if(list == null){
+					list = new ArrayList(1);
+					grouped.put(address, list);
+				}
+				list.add(bus);
+			}
+		}
+		LongObjectMap<BusInterface[]> byAddress = new LongObjectMap(grouped.size());
+		for(BusInterface bus : all){
+			int address = bus.getAddress() & 0xFFFF;
+			if(byAddress.containsKey(address)) continue;
+			ArrayList<BusInterface> list = grouped.get(address);
+			byAddress.put(address, list.toArray(new BusInterface[list.size()]));
+		}
+		Routes table = new Routes(all.toArray(new BusInterface[all.size()]), byAddress);
+		// Devices whose tiles aren't there yet are picked up on the next packet.
+		if(complete) routes = table;
+		return table;
+	}
+}
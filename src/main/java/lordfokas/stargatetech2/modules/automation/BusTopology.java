@@ -0,0 +1,284 @@
+package lordfokas.stargatetech2.modules.automation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import lordfokas.stargatetech2.api.bus.IBusDevice;
+import lordfokas.stargatetech2.api.bus.IBusInterface;
+import lordfokas.stargatetech2.modules.ModuleAutomation;
+import lordfokas.stargatetech2.util.LongObjectMap;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * Keeps track of which bus cables in a world are connected, and which devices sit on them.
+ *
+ * The model is updated as cables and devices come and go instead of being rebuilt:
+ * placing a cable joins the networks around it, and removing one only walks the
+ * cables around the hole to find out whether the network split. Cables that were
+ * never seen since the world loaded are mapped the first time something asks for them.
+ */
+public final class BusTopology {
+	private static final HashMap<World, BusTopology> worlds = new HashMap();
+	private static final EnumFacing[] DIRECTIONS = EnumFacing.values();
+	
+	private final World world;
+	private final LongObjectMap<BusNetwork> cables = new LongObjectMap();
+	
+	private BusTopology(World world){
+		this.world = world;
+	}
+	
+	public static BusTopology get(World world){
+		BusTopology topology = worlds.get(world);
+		if(topology == null){
+			topology = new BusTopology(world);
+			worlds.put(world, topology);
+		}
+		return topology;
+	}
+	
+	public static void unload(World world){
+		worlds.remove(world);
+	}
+	
+	private static BlockBusCable cable(){
+		return ModuleAutomation.busCable;
+	}
+	
+	public boolean isCable(BlockPos pos){
+		return world.getBlockState(pos).getBlock() == cable();
+	}
+	
+	public boolean isKnownCable(BlockPos pos){
+		return cables.containsKey(pos.toLong());
+	}
+	
+	/**
+	 * @return The network a device's side is plugged into, or null if it isn't plugged into a cable.
+	 */
+	public BusNetwork getNetworkFacing(BlockPos device, EnumFacing side){
+		BlockPos pos = device.offset(side);
+		if(!isCable(pos)) return null;
+		if(cable().getBusConnection(world, pos, side.getOpposite()) != ConnectionType.DEVICE) return null;
+		BusNetwork network = cables.get(pos.toLong());
+		if(network == null) network = map(pos);
+		return network == null ? null : network.find();
+	}
+	
+	public void onCableAdded(BlockPos pos){
+		if(!isKnownCable(pos)) map(pos);
+	}
+	
+	public void onCableRemoved(BlockPos pos){
+		BusNetwork removed = cables.remove(pos.toLong());
+		if(removed == null) return;
+		BusNetwork network = removed.find();
+		network.addCables(-1);
+		ArrayList<BlockPos> neighbours = new ArrayList(6);
+		for(EnumFacing dir : DIRECTIONS){
+			BlockPos next = pos.offset(dir);
+			RemoteDevice device = new RemoteDevice(next, dir.getOpposite());
+			network.removeDevice(device);
+			bind(device, null);
+			if(isKnownCable(next) && isCable(next)) neighbours.add(next);
+		}
+		if(neighbours.size() > 1) split(network, neighbours);
+	}
+	
+	public void onDeviceAdded(BlockPos pos){
+		for(EnumFacing dir : DIRECTIONS){
+			BlockPos next = pos.offset(dir);
+			if(!isCable(next)) continue;
+			BusNetwork network = cables.get(next.toLong());
+			if(network == null){
+				map(next); // mapping the cable picks this device up too.
+				continue;
+			}
+			RemoteDevice device = new RemoteDevice(pos, dir);
+			if(cable().getBusConnection(world, next, dir.getOpposite()) == ConnectionType.DEVICE){
+				network = network.find();
+				network.addDevice(device);
+				bind(device, network);
+			}else{
+				network.find().removeDevice(device);
+				bind(device, null);
+			}
+		}
+	}
+	
+	public void onDeviceRemoved(BlockPos pos){
+		for(EnumFacing dir : DIRECTIONS){
+			BusNetwork network = cables.get(pos.offset(dir).toLong());
+			if(network != null) network.find().removeDevice(new RemoteDevice(pos, dir));
+		}
+	}
+	
+	/**
+	 * Maps every unknown cable connected to start into a new network, and joins it
+	 * with any known network it runs into.
+	 *
+	 * @return The network, or null if start isn't a cable.
+	 */
+	private BusNetwork map(BlockPos start){
+		if(!isCable(start)) return null;
+		BusNetwork network = new BusNetwork();
+		ArrayList<RemoteDevice> devices = new ArrayList();
+		ArrayDeque<BlockPos> queue = new ArrayDeque();
+		cables.put(start.toLong(), network);
+		queue.add(start);
+		int count = 0;
+		while(!queue.isEmpty()){
+			BlockPos pos = queue.poll();
+			count++;
+			for(EnumFacing dir : DIRECTIONS){
+				ConnectionType connection = cable().getBusConnection(world, pos, dir);
+				if(!connection.isConnected()) continue;
+				BlockPos next = pos.offset(dir);
+				if(connection.hasPlug()){
+					devices.add(new RemoteDevice(next, dir.getOpposite()));
+					continue;
+				}
+				if(!isCable(next)) continue;
+				BusNetwork other = cables.get(next.toLong());
+				if(other == null){
+					cables.put(next.toLong(), network);
+					queue.add(next);
+				}else if(other.find() != network.find()){
+					network = BusNetwork.union(network, other);
+				}
+			}
+		}
+		// The cables mapped above all point at the first network, which may have been joined into another.
+		network = network.find();
+		network.addCables(count);
+		for(int i = 0; i < devices.size(); i++){
+			network.addDevice(devices.get(i));
+			bind(devices.get(i), network);
+		}
+		return network;
+	}
+	
+	/**
+	 * Finds out whether removing a cable split its network in pieces.
+	 *
+	 * A search starts from each cable that was next to the removed one, and they all
+	 * advance one cable at a time. Searches that meet belong to the same piece. A piece
+	 * whose searches all run out of cables is cut off from the rest and becomes a network
+	 * of its own. Once only one piece is left, it keeps the old network, so the largest
+	 * piece usually never has to be walked in full.
+	 */
+	private void split(BusNetwork network, ArrayList<BlockPos> starts){
+		int count = starts.size();
+		ArrayDeque<BlockPos>[] queues = new ArrayDeque[count];
+		ArrayList<BlockPos>[] visited = new ArrayList[count];
+		int[] group = new int[count];
+		boolean[] done = new boolean[count];
+		LongObjectMap<Integer> owner = new LongObjectMap();
+		for(int i = 0; i < count; i++){
+			queues[i] = new ArrayDeque();
+			visited[i] = new ArrayList();
+			group[i] = i;
+			BlockPos start = starts.get(i);
+			Integer previous = owner.get(start.toLong());
+			if(previous != null){
+				join(group, previous, i);
+				continue;
+			}
+			owner.put(start.toLong(), i);
+			queues[i].add(start);
+			visited[i].add(start);
+		}
+		int pieces = 0;
+		for(int i = 0; i < count; i++){
+			if(root(group, i) == i) pieces++;
+		}
+		while(pieces > 1){
+			for(int i = 0; i < count; i++){
+				BlockPos pos = queues[i].poll();
+				if(pos == null) continue;
+				for(EnumFacing dir : DIRECTIONS){
+					if(cable().getBusConnection(world, pos, dir) != ConnectionType.CABLE) continue;
+					BlockPos next = pos.offset(dir);
+					Integer other = owner.get(next.toLong());
+					if(other == null){
+						owner.put(next.toLong(), i);
+						queues[i].add(next);
+						visited[i].add(next);
+					}else if(root(group, other) != root(group, i)){
+						join(group, other, i);
+						pieces--;
+					}
+				}
+			}
+			for(int g = 0; g < count && pieces > 1; g++){
+				if(done[g] || root(group, g) != g || !isExhausted(group, queues, g)) continue;
+				done[g] = true;
+				pieces--;
+				detach(network, group, visited, g);
+			}
+		}
+	}
+	
+	private static int root(int[] group, int i){
+		while(group[i] != i){
+			group[i] = group[group[i]];
+			i = group[i];
+		}
+		return i;
+	}
+	
+	private static void join(int[] group, int a, int b){
+		group[root(group, a)] = root(group, b);
+	}
+	
+	private static boolean isExhausted(int[] group, ArrayDeque<BlockPos>[] queues, int g){
+		for(int i = 0; i < queues.length; i++){
+			if(root(group, i) == g && !queues[i].isEmpty()) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves the cables found by every search in group g, and the devices on them, to a new network.
+	 */
+	private void detach(BusNetwork network, int[] group, ArrayList<BlockPos>[] visited, int g){
+		BusNetwork piece = new BusNetwork();
+		int count = 0;
+		for(int i = 0; i < visited.length; i++){
+			if(root(group, i) != g) continue;
+			for(int j = 0; j < visited[i].size(); j++){
+				BlockPos pos = visited[i].get(j);
+				cables.put(pos.toLong(), piece);
+				count++;
+				for(EnumFacing dir : DIRECTIONS){
+					if(cable().getBusConnection(world, pos, dir) != ConnectionType.DEVICE) continue;
+					RemoteDevice device = new RemoteDevice(pos.offset(dir), dir.getOpposite());
+					network.removeDevice(device);
+					piece.addDevice(device);
+					bind(device, piece);
+				}
+			}
+		}
+		piece.addCables(count);
+		network.addCables(-count);
+	}
+	
+	/**
+	 * Points every interface on a device's side at the given network.
+	 */
+	private void bind(RemoteDevice device, BusNetwork network){
+		TileEntity te = world.getTileEntity(device.pos);
+		if(!(te instanceof IBusDevice)) return;
+		IBusInterface[] interfaces = ((IBusDevice)te).getInterfaces(device.side);
+		if(interfaces == null) return;
+		for(IBusInterface i : interfaces){
+			if(i instanceof BusInterface){
+				((BusInterface)i).setNetwork(device.side, network);
+			}
+		}
+	}
+}
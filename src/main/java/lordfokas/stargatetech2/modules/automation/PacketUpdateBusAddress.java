@@ -2,8 +2,10 @@ package lordfokas.stargatetech2.modules.automation;
 
 import lordfokas.naquadria.network.BasePacket.ClientToServer;
 import lordfokas.naquadria.network.PacketCoordinates;
+import lordfokas.stargatetech2.api.bus.IBusInterface;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.relauncher.Side;
 
@@ -21,7 +23,15 @@ public class PacketUpdateBusAddress extends PacketCoordinates {
 		address = input.readShort();
 		TileEntity te = player.worldObj.getTileEntity(coordinates);
 		if(te instanceof ISyncBusDevice){
-			((ISyncBusDevice)te).setAddress(address);
+			ISyncBusDevice device = (ISyncBusDevice) te;
+			device.setAddress(address);
+			for(EnumFacing facing : EnumFacing.values()){
+				IBusInterface[] interfaces = device.getInterfaces(facing);
+				if(interfaces == null) continue;
+				for(IBusInterface i : interfaces){
+					if(i instanceof BusInterface) ((BusInterface)i).onAddressChanged();
+				}
+			}
 		}
 		return null;
 	}
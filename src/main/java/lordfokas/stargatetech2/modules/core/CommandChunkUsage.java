@@ -0,0 +1,38 @@
+package lordfokas.stargatetech2.modules.core;
+
+import lordfokas.stargatetech2.util.ChunkLoader;
+import lordfokas.stargatetech2.util.ConfigServer;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentTranslation;
+
+/**
+ * Shows how much of the chunk loading budget Stargates are using.
+ */
+public class CommandChunkUsage extends CommandBase {
+	
+	@Override
+	public String getCommandName() {
+		return "sgchunks";
+	}
+	
+	@Override
+	public String getCommandUsage(ICommandSender sender) {
+		return "commands.sgchunks.usage";
+	}
+	
+	@Override
+	public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+		sender.addChatMessage(new TextComponentTranslation("commands.sgchunks.total", ChunkLoader.forcedCount(), limit(ConfigServer.forcedChunksTotal), ChunkLoader.leaseCount()));
+		for(Integer dim : ChunkLoader.getForcedDimensions()){
+			sender.addChatMessage(new TextComponentTranslation("commands.sgchunks.dimension", dim, ChunkLoader.forcedCount(dim.intValue()), limit(ConfigServer.forcedChunksPerDimension)));
+		}
+	}
+	
+	private static String limit(int budget){
+		return budget > 0 ? String.valueOf(budget) : "-";
+	}
+
+}
@@ -1,12 +1,16 @@
 package lordfokas.stargatetech2.modules.enemy;
 
+import java.util.BitSet;
+
 import lordfokas.stargatetech2.api.bus.BusPacket;
 import lordfokas.stargatetech2.api.bus.BusPacketLIP;
 import lordfokas.stargatetech2.api.bus.BusProtocols;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.modules.automation.ISyncBusDriver;
 import lordfokas.stargatetech2.modules.enemy.tileentity.ShieldControllerCommon;
 
-public class ShieldControllerBusDriver implements ISyncBusDriver{
+public class ShieldControllerBusDriver implements ISyncBusDriver, IBusDriverFilter{
+	private static final BitSet ACCEPTED = BusProtocols.accept(BusProtocols.PROTOCOL_LIP);
 	private ShieldControllerCommon controller;
 	private short address = 0x0000;
 	private boolean enabled = true;
@@ -15,6 +19,11 @@ public class ShieldControllerBusDriver implements ISyncBusDriver{
 		this.controller = controller;
 	}
 	
+	@Override
+	public BitSet getAcceptedProtocols(){
+		return ACCEPTED;
+	}
+	
 	@Override
 	public boolean canHandlePacket(short sender, int protocolID, boolean hasLIP) {
 		return protocolID == BusProtocols.PROTOCOL_LIP;
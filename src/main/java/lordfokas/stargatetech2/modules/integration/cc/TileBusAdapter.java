@@ -32,6 +32,8 @@ public class TileBusAdapter /* extends BaseTileEntity__OLD_AND_FLAWED implements
 		DISPOSEPACKET("disposePacket"),
 		GETFIELDLIST("getFieldList"),
 		GETFIELD("getField"),
+		GETFIELDS("getFields"),
+		GETPACKETDATA("getPacketData"),
 		LISTMETHODS("listMethods");
 		
 		private String name;
@@ -138,6 +140,19 @@ public class TileBusAdapter /* extends BaseTileEntity__OLD_AND_FLAWED implements
 				return packet.getEntryList().toArray();
 			case GETFIELD:
 				return new Object[]{packet.get((String)arguments[0])};
+			case GETFIELDS: // THE WHOLE PACKET AS ONE TABLE, INSTEAD OF ONE CALL PER FIELD
+				HashMap<String, String> fields = new HashMap();
+				for(int i = 0; i < packet.size(); i++){
+					fields.put(packet.getKey(i), packet.getValue(i));
+				}
+				return new Object[]{fields};
+			case GETPACKETDATA: // THE WHOLE PACKET IN LIPCodec FORMAT, ONE CHARACTER PER BYTE
+				byte[] data = LIPCodec.encode(packet);
+				char[] chars = new char[data.length];
+				for(int i = 0; i < data.length; i++){
+					chars[i] = (char)(data[i] & 0xFF);
+				}
+				return new Object[]{new String(chars)};
 			case LISTMETHODS:
 				return getMethodNames();
 			default: break;
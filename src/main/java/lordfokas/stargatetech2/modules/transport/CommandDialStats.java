@@ -0,0 +1,32 @@
+package lordfokas.stargatetech2.modules.transport;
+
+import lordfokas.stargatetech2.modules.transport.stargates.StargateNetwork;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentTranslation;
+
+/**
+ * Shows how many dials the whole network has seen, and how many were turned away.
+ */
+public class CommandDialStats extends CommandBase {
+	
+	@Override
+	public String getCommandName() {
+		return "sgdials";
+	}
+	
+	@Override
+	public String getCommandUsage(ICommandSender sender) {
+		return "commands.sgdials.usage";
+	}
+	
+	@Override
+	public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+		StargateNetwork network = StargateNetwork.instance();
+		if(!network.isLoaded()) throw new CommandException("commands.sgdials.notloaded");
+		sender.addChatMessage(new TextComponentTranslation("commands.sgdials.stats", network.getDialsRequested(), network.getDialsRateLimited(), network.getDialsRejected()));
+	}
+
+}
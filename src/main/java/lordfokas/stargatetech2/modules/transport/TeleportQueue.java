@@ -0,0 +1,137 @@
+package lordfokas.stargatetech2.modules.transport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import lordfokas.stargatetech2.ZZ_THRASH.Vec3Int_THRASH;
+import lordfokas.stargatetech2.util.ConfigServer;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.gen.ChunkProviderServer;
+
+/**
+ * Collects the entities sent through wormholes during a tick and moves them in batches.
+ *
+ * Entities are grouped by destination, and a group only moves once its destination chunk
+ * is loaded; until then the chunk is requested in the background and the group waits.
+ * Players that changed worlds are synced together after the batch. At most {@link ConfigServer#teleportsPerTick} entities are moved each tick; the rest
+ * stay queued for the next tick, and groups take turns so a busy gate can't starve the others.
+ */
+public final class TeleportQueue {
+	private static final class Group{
+		final World worldTo;
+		final Vec3Int_THRASH position;
+		final double[] exit;
+		final float yaw;
+		final ArrayDeque<Transfer> transfers = new ArrayDeque();
+		
+		Group(World worldTo, Vec3Int_THRASH position, float yaw){
+			this.worldTo = worldTo;
+			this.position = position;
+			this.exit = new double[]{((double)position.x) + 0.5D, position.y, ((double)position.z) + 0.5D};
+			this.yaw = yaw;
+		}
+		
+		boolean isFor(World world, Vec3Int_THRASH pos){
+			return worldTo == world && position.x == pos.x && position.y == pos.y && position.z == pos.z;
+		}
+	}
+	
+	private static final class Transfer{
+		final World worldFrom;
+		final Entity entity;
+		
+		Transfer(World worldFrom, Entity entity){
+			this.worldFrom = worldFrom;
+			this.entity = entity;
+		}
+	}
+	
+	private static final ArrayList<Group> groups = new ArrayList();
+	private static final IdentityHashMap<Entity, Boolean> queued = new IdentityHashMap();
+	private static final ArrayList<EntityPlayerMP> sync = new ArrayList();
+	private static final ArrayList<WorldServer> syncWorlds = new ArrayList();
+	private static int next = 0;
+	
+	/** Passed to chunk loads so chunks on disk are read in the background instead of right away. */
+	public static final Runnable ASYNC = new Runnable(){
+		@Override public void run(){}
+	};
+	
+	private TeleportQueue(){}
+	
+	/**
+	 * Queues an entity to be moved to the destination. Entities already queued are ignored.
+	 */
+	public static void enqueue(World worldFrom, Entity entity, World worldTo, Vec3Int_THRASH position, float yaw){
+		if(worldFrom.isRemote || queued.containsKey(entity)) return;
+		Group group = null;
+		for(int i = 0; i < groups.size(); i++){
+			if(groups.get(i).isFor(worldTo, position)){
+				group = groups.get(i);
+				break;
+			}
+		}
+		if(group == null){
+			group = new Group(worldTo, position, yaw);
+			groups.add(group);
+		}
+		group.transfers.addLast(new Transfer(worldFrom, entity));
+		queued.put(entity, Boolean.TRUE);
+	}
+	
+	public static boolean isEmpty(){
+		return queued.isEmpty();
+	}
+	
+	/**
+	 * Moves as many queued entities as the per-tick budget allows.
+	 */
+	public static void flush(){
+		if(queued.isEmpty()) return;
+		int budget = ConfigServer.teleportsPerTick;
+		int size = groups.size();
+		for(int g = 0; g < size && budget > 0; g++){
+			Group group = groups.get((next + g) % size);
+			if(group.transfers.isEmpty()) continue;
+			ChunkProviderServer provider = ((WorldServer)group.worldTo).theChunkProviderServer;
+			int cx = group.position.x >> 4, cz = group.position.z >> 4;
+			if(!provider.chunkExists(cx, cz)){
+				provider.loadChunk(cx, cz, ASYNC);
+				continue;
+			}
+			while(budget > 0 && !group.transfers.isEmpty()){
+				Transfer transfer = group.transfers.removeFirst();
+				queued.remove(transfer.entity);
+				// It may have died or left through something else while it waited.
+				if(transfer.entity.isDead || transfer.entity.worldObj != transfer.worldFrom) continue;
+				int before = sync.size();
+				Teleporter.teleportBatched(transfer.worldFrom, transfer.entity, group.worldTo, group.exit, group.yaw, sync);
+				for(int i = before; i < sync.size(); i++){
+					syncWorlds.add((WorldServer)group.worldTo);
+				}
+				budget--;
+			}
+		}
+		next = size == 0 ? 0 : (next + 1) % size;
+		for(int i = 0; i < sync.size(); i++){
+			Teleporter.syncPlayer(sync.get(i), syncWorlds.get(i));
+		}
+		sync.clear();
+		syncWorlds.clear();
+		for(int i = groups.size() - 1; i >= 0; i--){
+			if(groups.get(i).transfers.isEmpty()) groups.remove(i);
+		}
+	}
+	
+	public static void clear(){
+		groups.clear();
+		queued.clear();
+		sync.clear();
+		syncWorlds.clear();
+		next = 0;
+	}
+}
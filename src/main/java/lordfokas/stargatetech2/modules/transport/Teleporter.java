@@ -1,6 +1,7 @@
 package lordfokas.stargatetech2.modules.transport;
 
 import java.util.Iterator;
+import java.util.List;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityList;
@@ -16,6 +17,7 @@ import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import cpw.mods.fml.common.FMLCommonHandler;
 import lordfokas.stargatetech2.ZZ_THRASH.Vec3Int_THRASH;
+import lordfokas.stargatetech2.util.StargateLogger;
 
 public class Teleporter{
 	private static final int X = 0, Y = 1, Z = 2;
@@ -28,15 +30,26 @@ public class Teleporter{
 	public static void teleport(World worldFrom, Entity entity, World worldTo, double[] position, float yaw){
 		if(worldFrom.isRemote) return;
 		if(mcServer == null) mcServer = FMLCommonHandler.instance().getMinecraftServerInstance();
-		teleport(worldTo, entity, position, yaw);
+		teleport(worldTo, entity, position, yaw, null);
 	}
 	
-	private static Entity teleport(World world, Entity entity, double[] position, float yaw){
+	/**
+	 * Teleports an entity as part of a batch. The destination chunk must already be loaded,
+	 * and players that changed worlds are added to the list instead of being synced,
+	 * so the caller can sync them all at once with {@link #syncPlayer(EntityPlayerMP, WorldServer)}.
+	 */
+	static void teleportBatched(World worldFrom, Entity entity, World worldTo, double[] position, float yaw, List<EntityPlayerMP> sync){
+		if(worldFrom.isRemote) return;
+		if(mcServer == null) mcServer = FMLCommonHandler.instance().getMinecraftServerInstance();
+		teleport(worldTo, entity, position, yaw, sync);
+	}
+	
+	private static Entity teleport(World world, Entity entity, double[] position, float yaw, List<EntityPlayerMP> sync){
 		// If there is a mount, unmount, tp, and save for later.
 		Entity mount = entity.ridingEntity;
 		if(entity.ridingEntity != null){
 			entity.mountEntity(null);
-			mount = teleport(world, mount, position, yaw);
+			mount = teleport(world, mount, position, yaw, sync);
 		}
 		// check if we're moving to a different world.
 		boolean differentWorld = entity.worldObj != world;
@@ -73,15 +86,21 @@ public class Teleporter{
 			entity.isDead = false;
 		}
 		entity.setLocationAndAngles(position[X] + 0.5D, position[Y], position[Z] + 0.5D, yaw, entity.rotationPitch);
-		((WorldServer)world).theChunkProviderServer.loadChunk(((int)position[X]) >> 4, ((int)position[Z]) >> 4);
+		if(sync == null){
+			((WorldServer)world).theChunkProviderServer.loadChunk(((int)position[X]) >> 4, ((int)position[Z]) >> 4);
+		}
 		if(differentWorld){
 			if(!(entity instanceof EntityPlayer)) { // NOT PLAYER
 				NBTTagCompound entityNBT = new NBTTagCompound();
 				entity.isDead = false;
 				entity.writeToNBTOptional(entityNBT);
 				entity.isDead = true;
+				String type = EntityList.getEntityString(entity);
 				entity = EntityList.createEntityFromNBT(entityNBT, world);
-				if(entity == null) return null;
+				if(entity == null){
+					StargateLogger.warning("Lost a " + type + " while teleporting it: it could not be recreated in dimension " + world.provider.dimensionId);
+					return null;
+				}
 				entity.dimension = world.provider.dimensionId;
 			}
 			world.spawnEntityInWorld(entity);
@@ -105,14 +124,11 @@ public class Teleporter{
 		if(entity instanceof EntityPlayerMP && differentWorld){ // PLAYER  CHANGED WORLD
 			EntityPlayerMP player = (EntityPlayerMP)entity;
 			player.theItemInWorldManager.setWorld((WorldServer)world);
-			player.mcServer.getConfigurationManager().updateTimeAndWeatherForPlayer(player, (WorldServer)world);
-			player.mcServer.getConfigurationManager().syncPlayerInventory(player);
-			Iterator potions = player.getActivePotionEffects().iterator();
-			while (potions.hasNext()){
-				PotionEffect effect = (PotionEffect)potions.next();
-				player.playerNetServerHandler.sendPacket(new S1DPacketEntityEffect(player.getEntityId(), effect));
+			if(sync == null){
+				syncPlayer(player, (WorldServer)world);
+			}else{
+				sync.add(player);
 			}
-			player.playerNetServerHandler.sendPacket(new S1FPacketSetExperience(player.experience, player.experienceTotal, player.experienceLevel));
 		}
 		entity.setLocationAndAngles(position[X], position[Y], position[Z], yaw, entity.rotationPitch);
 		//##################################################################################
@@ -127,4 +143,18 @@ public class Teleporter{
 		}
 		return entity; // return ourselves in case we're a mount being teleported.
 	}
+	
+	/**
+	 * Sends a player that changed worlds everything the client needs to catch up.
+	 */
+	static void syncPlayer(EntityPlayerMP player, WorldServer world){
+		player.mcServer.getConfigurationManager().updateTimeAndWeatherForPlayer(player, world);
+		player.mcServer.getConfigurationManager().syncPlayerInventory(player);
+		Iterator potions = player.getActivePotionEffects().iterator();
+		while (potions.hasNext()){
+			PotionEffect effect = (PotionEffect)potions.next();
+			player.playerNetServerHandler.sendPacket(new S1DPacketEntityEffect(player.getEntityId(), effect));
+		}
+		player.playerNetServerHandler.sendPacket(new S1FPacketSetExperience(player.experience, player.experienceTotal, player.experienceLevel));
+	}
 }
\ No newline at end of file
@@ -8,7 +8,8 @@ import lordfokas.stargatetech2.api.bus.IBusDevice;
 import lordfokas.stargatetech2.api.bus.IBusInterface;
 import lordfokas.stargatetech2.api.stargate.Address;
 import lordfokas.stargatetech2.api.stargate.DialError;
-import lordfokas.stargatetech2.api.stargate.ITileStargateBase;
+import lordfokas.stargatetech2.api.stargate.ICallbackDialer;
+import lordfokas.stargatetech2.api.stargate.IDialCallback;
 import lordfokas.stargatetech2.api.stargate.StargateEvent;
 import lordfokas.stargatetech2.api.stargate.Symbol;
 import lordfokas.stargatetech2.modules.ModuleTransport;
@@ -27,7 +28,7 @@ import cofh.api.energy.IEnergyHandler;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 
-public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITileStargateBase, IBusDevice, IEnergyHandler{
+public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ICallbackDialer, IBusDevice, IEnergyHandler{
 	private static final int DIAL_COST_8 = 20000;		// 20k
 	private static final int DIAL_COST_9 = 100000000;	// 100M
 	
@@ -89,12 +90,8 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 	}
 	
 	@Override
-	public void updateEntity(){
-		if(worldObj.isRemote){
-			clientTick();
-		}else{
-			serverTick();
-		}
+	public boolean canUpdate(){
+		return false; // wormholes are driven by the WormholeScheduler.
 	}
 	
 	public void setDirectionX(boolean isX){
@@ -118,13 +115,6 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 		}
 	}
 	
-	@ServerLogic
-	private void serverTick(){
-		if(hasActiveWormhole() && isSource){
-			wormhole.update();
-		}
-	}
-	
 	@ServerLogic
 	public void destroyStargate(){
 		if(!isInvalidating){
@@ -146,10 +136,34 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 	@Override
 	@ServerLogic
 	public DialError dial(Address address, int timeout, DialMethod method){
+		return dial(address, timeout, method, networkDriver);
+	}
+	
+	@Override
+	@ServerLogic
+	public DialError dial(Address address, int timeout, DialMethod method, IDialCallback callback){
 		if(worldObj.isRemote) return DialError.UNKNOWN_LOGIC_ERROR;
 		if(wormhole != null) return DialError.SOURCE_GATE_BUSY;
 		if(timeout < 1 || timeout > 38) timeout = 38;
-		return StargateNetwork.instance().dial(getAddress(), address, timeout);
+		return StargateNetwork.instance().dial(getAddress(), address, timeout, callback);
+	}
+	
+	/**
+	 * Locks the next symbol of an address that is being entered one symbol at a time.
+	 * The network uses it to get the destination ready before the dial completes.
+	 * Only the bus "lock" action calls this; there is no chevron or DHD dialing to hook into yet,
+	 * so a plain "dial" with the whole address gets no prewarming.
+	 */
+	@ServerLogic
+	public void lockSymbol(Symbol symbol){
+		if(worldObj.isRemote || wormhole != null) return;
+		StargateNetwork.instance().lockSymbol(getAddress(), symbol);
+	}
+	
+	@ServerLogic
+	public void clearSymbols(){
+		if(worldObj.isRemote) return;
+		StargateNetwork.instance().clearSymbols(getAddress());
 	}
 	
 	@ServerLogic
@@ -189,7 +203,7 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 			packet.set("address", address.toString());
 			packet.finish();
 			networkDriver.addPacket(packet);
-			interfaces[0].sendAllPackets();
+			interfaces[0].queueAllPackets();
 		}
 	}
 	
@@ -211,7 +225,21 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 		packet.set("action", "disconnecting");
 		packet.finish();
 		networkDriver.addPacket(packet);
-		interfaces[0].sendAllPackets();
+		interfaces[0].queueAllPackets();
+	}
+	
+	@ServerLogic
+	public void onDialFailed(Address address, DialError error){
+		BusPacketLIP packet = new BusPacketLIP(networkDriver.getInterfaceAddress(), (short)0xFFFF);
+		packet.setMetadata(new LIPMetadata(ModReference.MOD_ID, "Stargate", ""));
+		packet.set(".protocol", "Stargate Protocol");
+		packet.set(".target", "ANY");
+		packet.set("action", "dialError");
+		packet.set("address", address.toString());
+		packet.set("error", error.toString());
+		packet.finish();
+		networkDriver.addPacket(packet);
+		interfaces[0].queueAllPackets();
 	}
 	
 	// TODO: Implement these, in the future.
@@ -226,11 +254,6 @@ public class TileStargate extends BaseTileEntity__OLD_AND_FLAWED implements ITil
 		}
 	}
 	
-	@ClientLogic
-	private void clientTick(){
-		// TODO: implement gate animation.
-	}
-	
 	@ClientLogic
 	public RenderData getRenderData(){
 		return renderData;
@@ -4,12 +4,13 @@ import lordfokas.stargatetech2.api.bus.IBusDevice;
 import lordfokas.stargatetech2.api.bus.IBusInterface;
 import lordfokas.stargatetech2.api.stargate.Address;
 import lordfokas.stargatetech2.api.stargate.DialError;
-import lordfokas.stargatetech2.api.stargate.ITileStargateBase;
+import lordfokas.stargatetech2.api.stargate.ICallbackDialer;
+import lordfokas.stargatetech2.api.stargate.IDialCallback;
 import net.minecraft.world.World;
 import net.minecraftforge.common.util.ForgeDirection;
 import cofh.api.energy.IEnergyHandler;
 
-public class TileStargateBase extends TileStargateRing implements ITileStargateBase, IBusDevice, IEnergyHandler{
+public class TileStargateBase extends TileStargateRing implements ICallbackDialer, IBusDevice, IEnergyHandler{
 	
 	@Override
 	public DialError dial(Address address, int timeout, DialMethod method) {
@@ -20,6 +21,15 @@ public class TileStargateBase extends TileStargateRing implements ITileStargateB
 		return DialError.UNKNOWN_LOGIC_ERROR;
 	}
 	
+	@Override
+	public DialError dial(Address address, int timeout, DialMethod method, IDialCallback callback) {
+		TileStargate stargate = getStargate();
+		if(stargate != null){
+			return stargate.dial(address, timeout, method, callback);
+		}
+		return DialError.UNKNOWN_LOGIC_ERROR;
+	}
+	
 	// #########################################################
 	// IBusDevice
 	
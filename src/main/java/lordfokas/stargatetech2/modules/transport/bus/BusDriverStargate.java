@@ -1,18 +1,22 @@
 package lordfokas.stargatetech2.modules.transport.bus;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import lordfokas.stargatetech2.api.bus.BusPacket;
 import lordfokas.stargatetech2.api.bus.BusPacketLIP;
 import lordfokas.stargatetech2.api.bus.BusProtocols;
-import lordfokas.stargatetech2.api.bus.IBusDriver;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.api.stargate.Address;
 import lordfokas.stargatetech2.api.stargate.DialError;
+import lordfokas.stargatetech2.api.stargate.IDialCallback;
+import lordfokas.stargatetech2.api.stargate.Symbol;
 import lordfokas.stargatetech2.api.stargate.ITileStargateBase.DialMethod;
 import lordfokas.stargatetech2.modules.transport.TileStargate;
 import lordfokas.stargatetech2.modules.transport.stargates.StargateNetwork;
 
-public class BusDriverStargate implements IBusDriver{
+public class BusDriverStargate implements IBusDriverFilter, IDialCallback{
+	private static final BitSet ACCEPTED = BusProtocols.accept(BusProtocols.PROTOCOL_LIP);
 	private LinkedList<BusPacket> queue = new LinkedList();
 	private TileStargate stargate;
 	
@@ -20,6 +24,11 @@ public class BusDriverStargate implements IBusDriver{
 		this.stargate = stargate;
 	}
 	
+	@Override
+	public BitSet getAcceptedProtocols(){
+		return ACCEPTED;
+	}
+	
 	@Override
 	public boolean canHandlePacket(short sender, int protocolID, boolean hasLIP) {
 		return protocolID == BusProtocols.PROTOCOL_LIP;
@@ -45,7 +54,7 @@ public class BusDriverStargate implements IBusDriver{
 					Address address = StargateNetwork.parse(addr);
 					if(address != null){
 						DialError error = stargate.dial(address, timeout, DialMethod.MANUAL);
-						if(error == DialError.SUCCESSFULLY_DIALED){
+						if(error == DialError.DIALING_STARTED){
 							lip.addResponse(String.format("Dialing %s for %d seconds", address.toString(), timeout));
 						}else{
 							lip.addResponse("Dialing error: " + error);
@@ -56,6 +65,17 @@ public class BusDriverStargate implements IBusDriver{
 				}else{
 					lip.addResponse("ERROR: you must provide an address!");
 				}
+			}else if(action.equalsIgnoreCase("lock")){
+				Symbol symbol = StargateNetwork.parseSymbol(lip.get("symbol"));
+				if(symbol != null){
+					stargate.lockSymbol(symbol);
+					lip.addResponse("Locked " + symbol);
+				}else{
+					lip.addResponse("ERROR: you must provide a valid symbol!");
+				}
+			}else if(action.equalsIgnoreCase("unlock")){
+				stargate.clearSymbols();
+				lip.addResponse("Cleared locked symbols");
 			}else if(action.equalsIgnoreCase("openIris")){
 				// stargate.openIris();
 				lip.addResponse("Open what now?");
@@ -79,6 +99,13 @@ public class BusDriverStargate implements IBusDriver{
 		}
 	}
 
+	@Override
+	public void onDialResult(Address source, Address destination, DialError result){
+		if(result != DialError.SUCCESSFULLY_DIALED){
+			stargate.onDialFailed(destination, result);
+		}
+	}
+	
 	@Override
 	public BusPacket getNextPacketToSend() {
 		return queue.isEmpty() ? null : queue.removeFirst();
@@ -1,11 +1,15 @@
 package lordfokas.stargatetech2.modules.transport.bus;
 
+import java.util.BitSet;
+
 import lordfokas.stargatetech2.api.bus.BusPacket;
-import lordfokas.stargatetech2.api.bus.IBusDriver;
+import lordfokas.stargatetech2.api.bus.BusProtocols;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.modules.transport.TileBeaconTransceiver;
 import lordfokas.stargatetech2.modules.transport.bus.BusPacketBeacons.RequestMode;
 
-public class BusDriverTransceiverA implements IBusDriver{
+public class BusDriverTransceiverA implements IBusDriverFilter{
+	private static final BitSet ACCEPTED = BusProtocols.accept(BusPacketBeacons.PROTOCOL_ID);
 	private TileBeaconTransceiver transceiver;
 	private BusPacketBeacons packet = null;
 	
@@ -13,6 +17,11 @@ public class BusDriverTransceiverA implements IBusDriver{
 		this.transceiver = transceiver;
 	}
 	
+	@Override
+	public BitSet getAcceptedProtocols(){
+		return ACCEPTED;
+	}
+	
 	@Override
 	public boolean canHandlePacket(short sender, int protocolID, boolean hasLIP){
 		return protocolID == BusPacketBeacons.PROTOCOL_ID;
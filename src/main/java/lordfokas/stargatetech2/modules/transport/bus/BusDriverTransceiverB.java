@@ -1,14 +1,17 @@
 package lordfokas.stargatetech2.modules.transport.bus;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import lordfokas.stargatetech2.api.bus.BusPacket;
-import lordfokas.stargatetech2.api.bus.IBusDriver;
+import lordfokas.stargatetech2.api.bus.BusProtocols;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.modules.transport.TileBeaconTransceiver;
 import lordfokas.stargatetech2.modules.transport.beacons.BeaconData;
 import lordfokas.stargatetech2.modules.transport.bus.BusPacketBeacons.RequestMode;
 
-public class BusDriverTransceiverB implements IBusDriver{
+public class BusDriverTransceiverB implements IBusDriverFilter{
+	private static final BitSet ACCEPTED = BusProtocols.accept(BusPacketBeacons.PROTOCOL_ID);
 	private TileBeaconTransceiver transceiver;
 	private short address = (short) 0xFFFF;
 	
@@ -16,6 +19,11 @@ public class BusDriverTransceiverB implements IBusDriver{
 		this.transceiver = transceiver;
 	}
 	
+	@Override
+	public BitSet getAcceptedProtocols(){
+		return ACCEPTED;
+	}
+	
 	@Override
 	public boolean canHandlePacket(short sender, int protocolID, boolean hasLIP){
 		return protocolID == BusPacketBeacons.PROTOCOL_ID;
@@ -1,18 +1,26 @@
 package lordfokas.stargatetech2.modules.transport.bus;
 
+import java.util.BitSet;
+
 import lordfokas.stargatetech2.api.bus.BusPacket;
 import lordfokas.stargatetech2.api.bus.BusPacketLIP;
 import lordfokas.stargatetech2.api.bus.BusProtocols;
-import lordfokas.stargatetech2.api.bus.IBusDriver;
+import lordfokas.stargatetech2.api.bus.IBusDriverFilter;
 import lordfokas.stargatetech2.modules.transport.TileTransportRing;
 
-public class BusDriverTransportRing implements IBusDriver{
+public class BusDriverTransportRing implements IBusDriverFilter{
+	private static final BitSet ACCEPTED = BusProtocols.accept(BusProtocols.PROTOCOL_LIP);
 	private TileTransportRing rings;
 	
 	public BusDriverTransportRing(TileTransportRing rings){
 		this.rings = rings;
 	}
 	
+	@Override
+	public BitSet getAcceptedProtocols(){
+		return ACCEPTED;
+	}
+	
 	@Override
 	public boolean canHandlePacket(short sender, int protocolID, boolean hasLIP) {
 		return protocolID == BusProtocols.PROTOCOL_LIP;
@@ -0,0 +1,165 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import lordfokas.stargatetech2.api.stargate.Symbol;
+
+/**
+ * Hands out addresses and dimension prefixes without rejection sampling.
+ *
+ * Every valid suffix for a prefix (5 distinct symbols not in the prefix) is numbered
+ * from 0 to P(36,5). Each prefix has a counter that is run through a keyed Feistel
+ * permutation of that range, so consecutive allocations look random but never repeat,
+ * and an allocation costs the same no matter how full the prefix is. Prefixes work the
+ * same way over the P(39,3) possible prefixes, with a single counter.
+ *
+ * The key and counters are saved with the network files. Losing them (or replaying a
+ * journal over an older copy) is harmless: the network still skips anything already taken.
+ */
+public class AddressAllocator {
+	private static final int SYMBOLS = Symbol.values().length - 1;
+	private static final int PREFIX_LENGTH = 3;
+	private static final int SUFFIX_LENGTH = StargateNetwork.RANDOM_ADDRESS_LENGTH - PREFIX_LENGTH;
+	private static final long PREFIX_SPACE = permutations(SYMBOLS, PREFIX_LENGTH);
+	private static final long SUFFIX_SPACE = permutations(SYMBOLS - PREFIX_LENGTH, SUFFIX_LENGTH);
+	private static final int ROUNDS = 4;
+	
+	private final long key;
+	private long prefixCounter;
+	private final HashMap<Integer, Long> suffixCounters = new HashMap();
+	
+	public AddressAllocator(){
+		this(new Random().nextLong());
+	}
+	
+	private AddressAllocator(long key){
+		this.key = key;
+	}
+	
+	private static long permutations(int n, int k){
+		long count = 1;
+		for(int i = 0; i < k; i++){
+			count *= n - i;
+		}
+		return count;
+	}
+	
+	private static int prefixKey(Symbol[] prefix){
+		return (prefix[0].ordinal() << 12) | (prefix[1].ordinal() << 6) | prefix[2].ordinal();
+	}
+	
+	/**
+	 * @return The next unused suffix for this prefix, as a full address,
+	 * or null if every suffix of the prefix has been handed out.
+	 */
+	public Symbol[] nextAddress(Symbol[] prefix){
+		Integer pk = prefixKey(prefix);
+		Long counter = suffixCounters.get(pk);
+		long index = counter == null ? 0 : counter.longValue();
+		if(index >= SUFFIX_SPACE) return null;
+		suffixCounters.put(pk, index + 1);
+		long suffix = permute(index, SUFFIX_SPACE, pk.intValue());
+		Symbol[] symbols = new Symbol[PREFIX_LENGTH + SUFFIX_LENGTH];
+		for(int i = 0; i < PREFIX_LENGTH; i++){
+			symbols[i] = prefix[i];
+		}
+		decode(suffix, symbols, PREFIX_LENGTH);
+		return symbols;
+	}
+	
+	/**
+	 * @return The next prefix in the permutation, or null if all of them have been handed out.
+	 */
+	public Symbol[] nextPrefix(){
+		if(prefixCounter >= PREFIX_SPACE) return null;
+		long prefix = permute(prefixCounter++, PREFIX_SPACE, -1);
+		Symbol[] symbols = new Symbol[PREFIX_LENGTH];
+		decode(prefix, symbols, 0);
+		return symbols;
+	}
+	
+	/**
+	 * Turns an index into distinct symbols using a mixed radix number system:
+	 * each digit picks one of the symbols not used so far.
+	 */
+	private static void decode(long index, Symbol[] symbols, int from){
+		ArrayList<Symbol> pool = new ArrayList(SYMBOLS);
+		for(int s = 1; s <= SYMBOLS; s++){
+			pool.add(Symbol.get(s));
+		}
+		for(int i = 0; i < from; i++){
+			pool.remove(symbols[i]);
+		}
+		for(int i = from; i < symbols.length; i++){
+			int radix = pool.size();
+			symbols[i] = pool.remove((int)(index % radix));
+			index /= radix;
+		}
+	}
+	
+	/**
+	 * Keyed bijection on [0, domain). A balanced Feistel network permutes the smallest
+	 * even bit width that fits the domain, and values falling outside the domain are fed
+	 * back in (cycle walking) until they land inside it.
+	 */
+	private long permute(long value, long domain, int tweak){
+		int bits = 64 - Long.numberOfLeadingZeros(domain - 1);
+		int half = (bits + 1) / 2;
+		long mask = (1L << half) - 1;
+		do{
+			long left = value >>> half;
+			long right = value & mask;
+			for(int round = 0; round < ROUNDS; round++){
+				long next = left ^ (round(right, round, tweak) & mask);
+				left = right;
+				right = next;
+			}
+			value = (left << half) | right;
+		}while(value >= domain);
+		return value;
+	}
+	
+	private long round(long value, int round, int tweak){
+		long h = key ^ (value * 0x9E3779B97F4A7C15L) ^ (((long) tweak) << 20) ^ round;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	// ##################################################################
+	// Persistence
+	
+	public byte[] toBytes() throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		dos.writeLong(key);
+		dos.writeLong(prefixCounter);
+		dos.writeInt(suffixCounters.size());
+		for(Map.Entry<Integer, Long> entry : suffixCounters.entrySet()){
+			dos.writeInt(entry.getKey().intValue());
+			dos.writeLong(entry.getValue().longValue());
+		}
+		dos.close();
+		return bytes.toByteArray();
+	}
+	
+	public static AddressAllocator readFromStream(DataInputStream dis) throws IOException{
+		AddressAllocator allocator = new AddressAllocator(dis.readLong());
+		allocator.prefixCounter = dis.readLong();
+		int count = dis.readInt();
+		for(int i = 0; i < count; i++){
+			allocator.suffixCounters.put(dis.readInt(), dis.readLong());
+		}
+		return allocator;
+	}
+}
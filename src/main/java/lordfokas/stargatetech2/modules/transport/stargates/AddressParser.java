@@ -0,0 +1,130 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lordfokas.stargatetech2.api.stargate.Address;
+import lordfokas.stargatetech2.api.stargate.Symbol;
+
+/**
+ * Parses addresses written as three space separated groups of symbol names, like "Mig At Cla".
+ *
+ * Symbol names are compiled into a trie over their lowercase letters once, so parsing is
+ * a single pass over the text with no intermediate strings. No symbol name is a prefix of
+ * another, so the first name the trie reaches is the only one that can match.
+ *
+ * Programs tend to dial the same few addresses over and over, so the last few
+ * results are kept in a small LRU cache.
+ */
+public final class AddressParser {
+	private static final int CACHE_SIZE = 64;
+	private static final int LETTERS = 26;
+	private static final int MAX_SYMBOLS_PER_GROUP = 3;
+	
+	// Node 0 is the root. next[node * LETTERS + letter] is the child node, 0 if none.
+	private static final int[] next;
+	private static final Symbol[] terminal;
+	
+	static{
+		int nodes = 1;
+		for(int s = 1; s < Symbol.values().length; s++){
+			nodes += Symbol.get(s).toString().length();
+		}
+		int[] trie = new int[nodes * LETTERS];
+		Symbol[] ends = new Symbol[nodes];
+		int used = 1;
+		for(int s = 1; s < Symbol.values().length; s++){
+			Symbol symbol = Symbol.get(s);
+			String name = symbol.toString().toLowerCase();
+			int node = 0;
+			for(int i = 0; i < name.length(); i++){
+				int edge = node * LETTERS + (name.charAt(i) - 'a');
+				if(trie[edge] == 0) trie[edge] = used++;
+				node = trie[edge];
+			}
+			ends[node] = symbol;
+		}
+		next = trie;
+		terminal = ends;
+	}
+	
+	private static final Map<String, Address> cache = new LinkedHashMap<String, Address>(CACHE_SIZE, 0.75f, true){
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Address> eldest){
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	private AddressParser(){}
+	
+	/**
+	 * Parses an address, going through the cache first.
+	 * 
+	 * @return The address, {@link Address#ERROR} if its symbols don't make a valid address,
+	 * or null if the text isn't three groups of symbols.
+	 */
+	public static Address parse(String text){
+		if(text == null) return null;
+		synchronized(cache){
+			Address cached = cache.get(text);
+			if(cached != null) return cached;
+		}
+		Address address = parse((CharSequence) text);
+		if(address != null){
+			synchronized(cache){
+				cache.put(text, address);
+			}
+		}
+		return address;
+	}
+	
+	/**
+	 * Parses an address without touching the cache. Groups are split on single spaces,
+	 * each group holds up to three symbols, case is ignored and any leftover letters
+	 * in a group that don't make up a symbol are skipped.
+	 */
+	public static Address parse(CharSequence text){
+		if(text == null) return null;
+		int end = text.length();
+		while(end > 0 && text.charAt(end - 1) == ' ') end--;
+		if(end == 0) return null;
+		int groups = 1;
+		for(int i = 0; i < end; i++){
+			if(text.charAt(i) == ' ') groups++;
+		}
+		if(groups != 3) return null;
+		Symbol[] symbols = new Symbol[groups * MAX_SYMBOLS_PER_GROUP];
+		int count = 0;
+		int start = 0;
+		while(start <= end){
+			int stop = start;
+			while(stop < end && text.charAt(stop) != ' ') stop++;
+			int pos = start;
+			for(int found = 0; found < MAX_SYMBOLS_PER_GROUP && pos < stop; found++){
+				Symbol symbol = match(text, pos, stop);
+				if(symbol == null) break;
+				symbols[count++] = symbol;
+				pos += symbol.toString().length();
+			}
+			start = stop + 1;
+		}
+		Symbol[] result = new Symbol[count];
+		System.arraycopy(symbols, 0, result, 0, count);
+		return Address.create(result);
+	}
+	
+	/**
+	 * @return The symbol whose name starts at pos, or null if none does before stop.
+	 */
+	private static Symbol match(CharSequence text, int pos, int stop){
+		int node = 0;
+		for(int i = pos; i < stop; i++){
+			char c = Character.toLowerCase(text.charAt(i));
+			if(c < 'a' || c > 'z') return null;
+			node = next[node * LETTERS + (c - 'a')];
+			if(node == 0) return null;
+			if(terminal[node] != null) return terminal[node];
+		}
+		return null;
+	}
+}
@@ -0,0 +1,60 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import lordfokas.stargatetech2.api.stargate.Address;
+import lordfokas.stargatetech2.util.ConfigServer;
+import lordfokas.stargatetech2.util.LongObjectMap;
+
+/**
+ * Token bucket rate limiter for dialing, one bucket per source gate.
+ *
+ * Every gate can dial {@link ConfigServer#dialBurst} times in a row, after which it earns
+ * one more attempt every {@link ConfigServer#dialRefillTicks} ticks. This keeps computers
+ * on the abstract bus from brute-forcing addresses, without getting in the way of players.
+ */
+public class DialLimiter {
+	private static final class Bucket{
+		int tokens;
+		long lastRefill;
+	}
+	
+	private final LongObjectMap<Bucket> buckets = new LongObjectMap();
+	
+	/**
+	 * Takes a token from the gate's bucket, if there is one.
+	 *
+	 * @param now The current server tick.
+	 * @return Whether the gate may dial.
+	 */
+	public boolean tryAcquire(Address source, long now){
+		if(ConfigServer.dialBurst <= 0) return true;
+		long key = source.pack();
+		Bucket bucket = buckets.get(key);
+		if(bucket == null){
+			bucket = new Bucket();
+			bucket.tokens = ConfigServer.dialBurst;
+			bucket.lastRefill = now;
+			buckets.put(key, bucket);
+		}else if(bucket.tokens < ConfigServer.dialBurst){
+			long earned = (now - bucket.lastRefill) / ConfigServer.dialRefillTicks;
+			if(earned > 0){
+				bucket.tokens = (int) Math.min(ConfigServer.dialBurst, bucket.tokens + earned);
+				bucket.lastRefill += earned * ConfigServer.dialRefillTicks;
+			}
+		}else{
+			bucket.lastRefill = now;
+		}
+		if(bucket.tokens > 0){
+			bucket.tokens--;
+			return true;
+		}
+		return false;
+	}
+	
+	public void forget(Address source){
+		buckets.remove(source.pack());
+	}
+	
+	public void clear(){
+		buckets.clear();
+	}
+}
@@ -0,0 +1,119 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.ArrayList;
+
+import lordfokas.stargatetech2.api.stargate.Symbol;
+import lordfokas.stargatetech2.modules.transport.TeleportQueue;
+import lordfokas.stargatetech2.util.ChunkLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.WorldServer;
+
+/**
+ * A dial that is still being entered, one symbol at a time.
+ *
+ * Once the prefix is in, the destination dimension is loaded. Once the symbols entered
+ * so far match a single gate, the chunks around it are requested in the background
+ * and then leased for a short while. By the time the last symbol locks, the
+ * {@link DialSequence} finds everything ready and has no chunk work left to do.
+ *
+ * None of this is needed for the dial to work, so anything that doesn't resolve
+ * cleanly (dynamic worlds, no chunk budget left) is just skipped.
+ */
+class DialPrewarm {
+	private static final int CHUNK_REQUESTS_PER_TICK = 2;
+	private static final int LEASE_TTL = 600;
+	private static final int IDLE_TIMEOUT = 1200;
+	
+	private final StargateNetwork network;
+	final long source;
+	private final Symbol[] symbols = new Symbol[9];
+	private int count = 0;
+	private Integer dimension;
+	private boolean worldRequested;
+	private ArrayList<AddressMapping> candidates;
+	private AddressMapping target;
+	private int nextChunk = 0;
+	private boolean leaseRequested;
+	private long lease = -1;
+	private int idle = 0;
+	
+	DialPrewarm(StargateNetwork network, long source){
+		this.network = network;
+		this.source = source;
+	}
+	
+	void lock(Symbol symbol){
+		if(count == symbols.length) return;
+		symbols[count++] = symbol;
+		idle = 0;
+		if(count == 3){
+			dimension = network.getPrefixDimension(symbols[0], symbols[1], symbols[2]);
+			if(dimension != null) candidates = network.getGatesIn(dimension.intValue());
+		}else if(count > 3 && candidates != null){
+			for(int i = candidates.size() - 1; i >= 0; i--){
+				if(candidates.get(i).getAddress().getSymbol(count - 1) != symbol) candidates.remove(i);
+			}
+			AddressMapping match = candidates.size() == 1 ? candidates.get(0) : null;
+			if(match != target) retarget(match);
+		}
+	}
+	
+	private void retarget(AddressMapping match){
+		releaseLease();
+		target = match;
+		nextChunk = 0;
+		leaseRequested = false;
+	}
+	
+	/**
+	 * @return false once nothing has been locked for a while and this can be dropped.
+	 */
+	boolean tick(){
+		if(++idle > IDLE_TIMEOUT) return false;
+		if(dimension == null) return true;
+		if(!worldRequested){
+			worldRequested = true;
+			MinecraftServer.getServer().worldServerForDimension(dimension.intValue());
+			return true;
+		}
+		if(target != null && !leaseRequested){
+			WorldServer world = MinecraftServer.getServer().worldServerForDimension(dimension.intValue());
+			int cx = target.getXCoord() >> 4, cz = target.getZCoord() >> 4;
+			for(int requests = 0; nextChunk < 9 && requests < CHUNK_REQUESTS_PER_TICK; nextChunk++){
+				int x = cx + nextChunk / 3 - 1, z = cz + nextChunk % 3 - 1;
+				if(!world.theChunkProviderServer.chunkExists(x, z)){
+					world.theChunkProviderServer.loadChunk(x, z, TeleportQueue.ASYNC);
+					requests++;
+				}
+			}
+			if(nextChunk == 9 && allLoaded(world, cx, cz)){
+				leaseRequested = true;
+				lease = ChunkLoader.load9Chunks(world, cx, cz, LEASE_TTL);
+			}
+		}
+		return true;
+	}
+	
+	private static boolean allLoaded(WorldServer world, int cx, int cz){
+		for(int x = cx - 1; x <= cx + 1; x++){
+			for(int z = cz - 1; z <= cz + 1; z++){
+				if(!world.theChunkProviderServer.chunkExists(x, z)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Hands the lease over to whoever dials, so it's released when their sequence ends.
+	 */
+	long takeLease(){
+		long taken = lease;
+		lease = -1;
+		return taken;
+	}
+	
+	void releaseLease(){
+		ChunkLoader.release(lease);
+		lease = -1;
+	}
+}
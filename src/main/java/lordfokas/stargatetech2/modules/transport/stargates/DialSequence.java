@@ -0,0 +1,226 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import lordfokas.stargatetech2.api.stargate.Address;
+import lordfokas.stargatetech2.api.stargate.DialError;
+import lordfokas.stargatetech2.api.stargate.DialEvent;
+import lordfokas.stargatetech2.api.stargate.DialEvent.Progress.Stage;
+import lordfokas.stargatetech2.api.stargate.IDialCallback;
+import lordfokas.stargatetech2.modules.transport.TileStargate;
+import lordfokas.stargatetech2.util.ChunkLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.MinecraftForge;
+
+/**
+ * A dialing sequence in progress.
+ *
+ * Opening a wormhole needs the 3x3 chunks around both gates loaded, and loading
+ * (or worse, generating) 18 chunks in a single tick can stall the server. Instead,
+ * a sequence resolves both addresses, then requests a few chunks per tick, letting chunks
+ * that are on disk be read in the background, and waits for them before forcing them and
+ * validating the gates.
+ *
+ * Sequences are ticked by the {@link StargateNetwork} on the server thread.
+ */
+public class DialSequence {
+	private static final int CHUNK_REQUESTS_PER_TICK = 2;
+	private static final int MAX_WAIT_TICKS = 200;
+	private static final int LEASE_GRACE_TICKS = 200;
+	
+	private enum State{
+		RESOLVE, LOAD_CHUNKS, VALIDATE, DONE
+	}
+	
+	private final StargateNetwork network;
+	private final Address source, destination;
+	private final int timeout;
+	private final IDialCallback callback;
+	private State state = State.RESOLVE;
+	private AddressMapping srcmap, dstmap;
+	private WorldServer srcworld, dstworld;
+	private int nextChunk = 0;
+	private int pending = 0;
+	private int waited = 0;
+	private long srcChunks = -1, dstChunks = -1;
+	private final long prewarmed;
+	
+	DialSequence(StargateNetwork network, Address source, Address destination, int timeout, IDialCallback callback, long prewarmed){
+		this.network = network;
+		this.source = source;
+		this.destination = destination;
+		this.timeout = timeout;
+		this.callback = callback;
+		this.prewarmed = prewarmed;
+	}
+	
+	public Address getSource(){
+		return source;
+	}
+	
+	public boolean isDone(){
+		return state == State.DONE;
+	}
+	
+	/**
+	 * Advances the sequence by at most one stage.
+	 */
+	void tick(){
+		switch(state){
+			case RESOLVE:		resolve();	break;
+			case LOAD_CHUNKS:	loadChunks();	break;
+			case VALIDATE:		validate();	break;
+			default: break;
+		}
+	}
+	
+	/**
+	 * Aborts the sequence, releasing anything it holds. Used when the network unloads.
+	 */
+	void cancel(){
+		if(state != State.DONE) finish(DialError.UNKNOWN_LOGIC_ERROR);
+	}
+	
+	private void resolve(){
+		srcmap = network.getMapping(source);
+		dstmap = network.getMapping(destination);
+		network.dinamicallyLoadWorlds(dstmap, srcmap, destination);
+		dstmap = network.getMapping(destination);
+		if(srcmap == null){
+			finish(DialError.SOURCE_ADDRESS_NOT_FOUND);
+			return;
+		}
+		if(dstmap == null){
+			finish(DialError.TARGET_ADDRESS_NOT_FOUND);
+			return;
+		}
+		srcworld = MinecraftServer.getServer().worldServerForDimension(srcmap.getDimension());
+		dstworld = MinecraftServer.getServer().worldServerForDimension(dstmap.getDimension());
+		if(srcworld == null){
+			finish(DialError.SOURCE_WORLD_NOT_FOUND);
+		}else if(dstworld == null){
+			finish(DialError.TARGET_WORLD_NOT_FOUND);
+		}else if(srcworld == dstworld){
+			finish(DialError.CANNOT_DIAL_SAME_WORLD);
+		}else{
+			progress(Stage.RESOLVED);
+			state = State.LOAD_CHUNKS;
+			progress(Stage.LOADING_CHUNKS);
+		}
+	}
+	
+	private void loadChunks(){
+		// Chunks 0-8 surround the source gate, 9-17 the target gate.
+		for(int requests = 0; nextChunk < 18 && requests < CHUNK_REQUESTS_PER_TICK; nextChunk++){
+			WorldServer world = chunkWorld(nextChunk);
+			int cx = chunkX(nextChunk), cz = chunkZ(nextChunk);
+			if(!world.theChunkProviderServer.chunkExists(cx, cz)){
+				pending++;
+				world.theChunkProviderServer.loadChunk(cx, cz, chunkLoaded);
+				requests++;
+			}
+		}
+		if(nextChunk == 18 && pending == 0){
+			leaseChunks();
+		}else if(++waited > MAX_WAIT_TICKS){
+			finish(firstMissingChunk() < 9 ? DialError.FAILED_CHUNKLOADING_SOURCE : DialError.FAILED_CHUNKLOADING_TARGET);
+		}
+	}
+	
+	/**
+	 * Chunks on disk are read in the background and this runs on the server thread once each
+	 * of them is in, so the sequence moves on as soon as the last one arrives.
+	 */
+	private final Runnable chunkLoaded = new Runnable(){
+		@Override
+		public void run(){
+			pending--;
+			if(pending == 0 && nextChunk == 18 && state == State.LOAD_CHUNKS) leaseChunks();
+		}
+	};
+	
+	private void leaseChunks(){
+		int missing = firstMissingChunk();
+		if(missing >= 0){
+			nextChunk = missing; // unloaded again while we waited for the others.
+			return;
+		}
+		// The leases outlive the wormhole a little, in case it never gets to release them.
+		int ttl = timeout * 20 + LEASE_GRACE_TICKS;
+		srcChunks = ChunkLoader.load9Chunks(srcworld, srcmap.getXCoord() >> 4, srcmap.getZCoord() >> 4, ttl);
+		if(srcChunks >= 0){
+			dstChunks = ChunkLoader.load9Chunks(dstworld, dstmap.getXCoord() >> 4, dstmap.getZCoord() >> 4, ttl);
+		}
+		if(srcChunks == ChunkLoader.OVER_BUDGET || dstChunks == ChunkLoader.OVER_BUDGET){
+			finish(DialError.CHUNKLOADING_BUDGET_EXCEEDED);
+		}else if(srcChunks < 0){
+			finish(DialError.FAILED_CHUNKLOADING_SOURCE);
+		}else if(dstChunks < 0){
+			finish(DialError.FAILED_CHUNKLOADING_TARGET);
+		}else{
+			state = State.VALIDATE;
+			progress(Stage.CHUNKS_READY);
+		}
+	}
+	
+	private void validate(){
+		TileEntity srcte = srcworld.getTileEntity(srcmap.getXCoord(), srcmap.getYCoord(), srcmap.getZCoord());
+		TileEntity dstte = dstworld.getTileEntity(dstmap.getXCoord(), dstmap.getYCoord(), dstmap.getZCoord());
+		if(!(srcte instanceof TileStargate)){
+			finish(DialError.SOURCE_GATE_NOT_FOUND);
+		}else if(!(dstte instanceof TileStargate)){
+			finish(DialError.TARGET_GATE_NOT_FOUND);
+		}else{
+			TileStargate src = (TileStargate) srcte;
+			TileStargate dst = (TileStargate) dstte;
+			if(dst.hasActiveWormhole()){
+				finish(DialError.TARGET_GATE_BUSY);
+			}else if(!src.canDial(8)){
+				finish(DialError.NOT_ENOUGH_POWER);
+			}else{
+				progress(Stage.VALIDATED);
+				network.openWormhole(new Wormhole(src, dst, srcChunks, dstChunks, timeout));
+				srcChunks = dstChunks = -1; // now owned by the wormhole.
+				finish(DialError.SUCCESSFULLY_DIALED);
+			}
+		}
+	}
+	
+	private int firstMissingChunk(){
+		for(int c = 0; c < 18; c++){
+			if(!chunkWorld(c).theChunkProviderServer.chunkExists(chunkX(c), chunkZ(c))) return c;
+		}
+		return -1;
+	}
+	
+	private WorldServer chunkWorld(int c){
+		return c < 9 ? srcworld : dstworld;
+	}
+	
+	private int chunkX(int c){
+		AddressMapping map = c < 9 ? srcmap : dstmap;
+		return (map.getXCoord() >> 4) + (c % 9) / 3 - 1;
+	}
+	
+	private int chunkZ(int c){
+		AddressMapping map = c < 9 ? srcmap : dstmap;
+		return (map.getZCoord() >> 4) + (c % 9) % 3 - 1;
+	}
+	
+	private void progress(Stage stage){
+		MinecraftForge.EVENT_BUS.post(new DialEvent.Progress(source, destination, timeout, stage));
+	}
+	
+	private void finish(DialError result){
+		state = State.DONE;
+		ChunkLoader.release(srcChunks);
+		ChunkLoader.release(dstChunks);
+		ChunkLoader.release(prewarmed); // the wormhole holds its own lease by now.
+		if(result == DialError.SUCCESSFULLY_DIALED){
+			MinecraftForge.EVENT_BUS.post(new DialEvent.Success(source, destination, timeout));
+		}else{
+			MinecraftForge.EVENT_BUS.post(new DialEvent.Error(source, destination, result));
+		}
+		if(callback != null) callback.onDialResult(source, destination, result);
+	}
+}
@@ -1,29 +1,37 @@
 package lordfokas.stargatetech2.modules.transport.stargates;
 
-import java.util.Random;
-
 import lordfokas.stargatetech2.api.stargate.Symbol;
 
 public class DimensionPrefix {
-	private Symbol[] symbols;
+	private static final int SYMBOL_BITS = 6;
+	private static final int SYMBOL_MASK = (1 << SYMBOL_BITS) - 1;
 	
-	public static DimensionPrefix generateRandom(){
-		Random random = new Random();
-		boolean[] used = new boolean[40];
-		Symbol[] symbols = new Symbol[3];
-		for(int i = 0; i < symbols.length; i++){
-			int s;
-			do{
-				s = random.nextInt(39) + 1;
-			}while(used[s]);
-			used[s] = true;
-			symbols[i] = Symbol.values()[s];
-		}
-		return new DimensionPrefix(symbols);
-	}
+	private Symbol[] symbols;
+	private final int packed;
 	
 	public DimensionPrefix(Symbol[] symbols){
 		this.symbols = symbols;
+		this.packed = pack(symbols[0], symbols[1], symbols[2]);
+	}
+	
+	public static DimensionPrefix unpack(int packed){
+		return new DimensionPrefix(new Symbol[]{
+			Symbol.get((packed >> (SYMBOL_BITS * 2)) & SYMBOL_MASK),
+			Symbol.get((packed >> SYMBOL_BITS) & SYMBOL_MASK),
+			Symbol.get(packed & SYMBOL_MASK)
+		});
+	}
+	
+	/**
+	 * Packs 3 symbols into an int, 6 bits each. Two prefixes are equal
+	 * if and only if their packed values are equal.
+	 */
+	public static int pack(Symbol s0, Symbol s1, Symbol s2){
+		return (s0.ordinal() << (SYMBOL_BITS * 2)) | (s1.ordinal() << SYMBOL_BITS) | s2.ordinal();
+	}
+	
+	public int pack(){
+		return packed;
 	}
 	
 	public Symbol[] getSymbols(){
@@ -32,19 +40,13 @@ public class DimensionPrefix {
 	
 	@Override
 	public int hashCode(){
-		return 0xDEADBEEF;
+		return packed;
 	}
 	
 	@Override
 	public boolean equals(Object o){
 		if(o instanceof DimensionPrefix){
-			DimensionPrefix dp = (DimensionPrefix) o;
-			for(int i = 0; i < symbols.length; i++){
-				if(symbols[i] != dp.symbols[i]){
-					return false;
-				}
-			}
-			return true;
+			return packed == ((DimensionPrefix) o).packed;
 		}
 		return false;
 	}
@@ -0,0 +1,99 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lordfokas.stargatetech2.modules.transport.TileStargate;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.AxisAlignedBB;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+
+/**
+ * The open face of a source Stargate, cached for the lifetime of a wormhole.
+ *
+ * The horizon volume and the chunk sections it can touch are worked out once. Each tick
+ * only the entities in those sections are looked at, and only the ones that are inside
+ * the horizon or whose movement crossed its plane are captured. An open gate with
+ * nothing around it costs a few empty list checks per tick.
+ */
+public class EventHorizon {
+	private static final double HALF_THICKNESS = 0.125;
+	private static final int MARGIN = 2; // same margin vanilla uses for entity lookups.
+	
+	private final World world;
+	private final AxisAlignedBB volume;
+	private final boolean alongX;
+	private final double plane;
+	private final int minCX, maxCX, minCZ, maxCZ, minSection, maxSection;
+	private final Chunk[] chunks;
+	private final ArrayList<Entity> captured = new ArrayList();
+	
+	public EventHorizon(TileStargate gate){
+		world = gate.getWorldObj();
+		alongX = gate.isX();
+		int x = gate.xCoord, y = gate.yCoord, z = gate.zCoord;
+		if(alongX){
+			plane = z + 0.5;
+			volume = AxisAlignedBB.getBoundingBox(x - 1, y + 1, plane - HALF_THICKNESS, x + 2, y + 4, plane + HALF_THICKNESS);
+		}else{
+			plane = x + 0.5;
+			volume = AxisAlignedBB.getBoundingBox(plane - HALF_THICKNESS, y + 1, z - 1, plane + HALF_THICKNESS, y + 4, z + 2);
+		}
+		minCX = ((int) Math.floor(volume.minX) - MARGIN) >> 4;
+		maxCX = ((int) Math.floor(volume.maxX) + MARGIN) >> 4;
+		minCZ = ((int) Math.floor(volume.minZ) - MARGIN) >> 4;
+		maxCZ = ((int) Math.floor(volume.maxZ) + MARGIN) >> 4;
+		minSection = Math.max(0, ((int) Math.floor(volume.minY) - MARGIN) >> 4);
+		maxSection = Math.min(15, ((int) Math.floor(volume.maxY) + MARGIN) >> 4);
+		chunks = new Chunk[(maxCX - minCX + 1) * (maxCZ - minCZ + 1)];
+	}
+	
+	/**
+	 * @return The entities that entered the horizon this tick. The list is reused, copy it to keep it.
+	 */
+	public List<Entity> capture(){
+		captured.clear();
+		int c = 0;
+		for(int cx = minCX; cx <= maxCX; cx++){
+			for(int cz = minCZ; cz <= maxCZ; cz++, c++){
+				Chunk chunk = chunks[c];
+				if(chunk == null || !chunk.isChunkLoaded){
+					if(!world.getChunkProvider().chunkExists(cx, cz)){
+						chunks[c] = null;
+						continue;
+					}
+					chunk = chunks[c] = world.getChunkFromChunkCoords(cx, cz);
+				}
+				for(int s = minSection; s <= maxSection; s++){
+					List section = chunk.entityLists[s];
+					for(int i = 0; i < section.size(); i++){
+						Entity entity = (Entity) section.get(i);
+						if(entity.riddenByEntity == null && !entity.isDead && entered(entity)){
+							captured.add(entity);
+						}
+					}
+				}
+			}
+		}
+		return captured;
+	}
+	
+	private boolean entered(Entity entity){
+		if(volume.intersectsWith(entity.boundingBox)) return true;
+		// Fast entities can skip over the thin horizon in a single tick.
+		double now, before;
+		if(alongX){
+			now = entity.posZ - plane;
+			before = entity.prevPosZ - plane;
+		}else{
+			now = entity.posX - plane;
+			before = entity.prevPosX - plane;
+		}
+		if((now < 0) == (before < 0)) return false;
+		double across = alongX ? entity.posX : entity.posZ;
+		double acrossMin = alongX ? volume.minX : volume.minZ;
+		double acrossMax = alongX ? volume.maxX : volume.maxZ;
+		return across >= acrossMin && across <= acrossMax && entity.posY + entity.height > volume.minY && entity.posY < volume.maxY;
+	}
+}
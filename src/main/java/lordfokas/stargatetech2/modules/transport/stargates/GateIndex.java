@@ -0,0 +1,175 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import lordfokas.stargatetech2.util.LongObjectMap;
+
+/**
+ * Spatial index of all the Stargates in a single dimension.
+ *
+ * Gates are bucketed in a grid of 256x256 block columns, so proximity queries
+ * only look at the few cells around the query point instead of every gate in the network.
+ * Exact position lookups go through a separate table keyed on the packed coordinates.
+ */
+public class GateIndex {
+	private static final int CELL_SHIFT = 8;
+	private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+	private final LongObjectMap<AddressMapping> positions = new LongObjectMap();
+	private final LongObjectMap<ArrayList<AddressMapping>> cells = new LongObjectMap();
+	private int minCX, maxCX, minCZ, maxCZ;
+
+	private static long positionKey(int x, int y, int z){
+		return ((x & 0x3FFFFFFL) << 38) | ((y & 0xFFFL) << 26) | (z & 0x3FFFFFFL);
+	}
+
+	private static long cellKey(int cx, int cz){
+		return (((long) cx) << 32) | (cz & 0xFFFFFFFFL);
+	}
+
+	public void add(AddressMapping map){
+		AddressMapping old = positions.put(positionKey(map.getXCoord(), map.getYCoord(), map.getZCoord()), map);
+		if(old != null) removeFromCell(old);
+		int cx = map.getXCoord() >> CELL_SHIFT;
+		int cz = map.getZCoord() >> CELL_SHIFT;
+		long key = cellKey(cx, cz);
+		ArrayList<AddressMapping> cell = cells.get(key);
+		if(cell == null){
+			cell = new ArrayList(2);
+			cells.put(key, cell);
+		}
+		if(positions.size() == 1 && cell.isEmpty()){
+			minCX = maxCX = cx;
+			minCZ = maxCZ = cz;
+		}else{
+			minCX = Math.min(minCX, cx);
+			maxCX = Math.max(maxCX, cx);
+			minCZ = Math.min(minCZ, cz);
+			maxCZ = Math.max(maxCZ, cz);
+		}
+		cell.add(map);
+	}
+
+	public void remove(AddressMapping map){
+		long key = positionKey(map.getXCoord(), map.getYCoord(), map.getZCoord());
+		AddressMapping old = positions.get(key);
+		if(old != null && old.getAddress().equals(map.getAddress())){
+			positions.remove(key);
+			removeFromCell(old);
+		}
+	}
+
+	private void removeFromCell(AddressMapping map){
+		long key = cellKey(map.getXCoord() >> CELL_SHIFT, map.getZCoord() >> CELL_SHIFT);
+		ArrayList<AddressMapping> cell = cells.get(key);
+		if(cell != null){
+			cell.remove(map);
+			if(cell.isEmpty()) cells.remove(key);
+		}
+	}
+	
+	/**
+	 * @return A live view of every gate in this dimension. Do not modify the index while iterating.
+	 */
+	public Collection<AddressMapping> all(){
+		return positions.values();
+	}
+
+	public boolean isEmpty(){
+		return positions.isEmpty();
+	}
+
+	/**
+	 * @return The gate at this exact position, if any.
+	 */
+	public AddressMapping get(int x, int y, int z){
+		return positions.get(positionKey(x, y, z));
+	}
+
+	/**
+	 * @return Whether there is any gate whose squared distance to this point is lower than distSq.
+	 */
+	public boolean anyWithin(int x, int y, int z, int distSq){
+		int r = (int) Math.ceil(Math.sqrt(distSq));
+		int cx0 = (x - r) >> CELL_SHIFT, cx1 = (x + r) >> CELL_SHIFT;
+		int cz0 = (z - r) >> CELL_SHIFT, cz1 = (z + r) >> CELL_SHIFT;
+		for(int cx = cx0; cx <= cx1; cx++){
+			for(int cz = cz0; cz <= cz1; cz++){
+				ArrayList<AddressMapping> cell = cells.get(cellKey(cx, cz));
+				if(cell == null) continue;
+				for(int i = 0; i < cell.size(); i++){
+					if(distanceSq(cell.get(i), x, y, z) < distSq) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Searches the cells in rings of increasing size around the query point,
+	 * stopping as soon as no unvisited cell can hold a closer gate.
+	 * Once the rings cover more cells than there are gates, for example when the
+	 * only gates are far away, it is cheaper to just check every gate, so it does that.
+	 *
+	 * @param r The maximum search radius, or a negative value to search the whole dimension.
+	 * @return The nearest gate strictly within the radius, if any.
+	 */
+	public AddressMapping nearest(int x, int y, int z, int r){
+		if(isEmpty()) return null;
+		long best = r < 0 ? Long.MAX_VALUE : ((long) r) * r;
+		AddressMapping nearest = null;
+		int ccx = x >> CELL_SHIFT;
+		int ccz = z >> CELL_SHIFT;
+		int maxRing;
+		if(r < 0){
+			maxRing = Math.max(Math.max(Math.abs(minCX - ccx), Math.abs(maxCX - ccx)), Math.max(Math.abs(minCZ - ccz), Math.abs(maxCZ - ccz)));
+		}else{
+			maxRing = (r >> CELL_SHIFT) + 1;
+		}
+		int gates = positions.size();
+		for(int ring = 0; ring <= maxRing; ring++){
+			long side = 2L * ring + 1;
+			if(side * side > gates){
+				return nearestOf(positions.values(), x, y, z, best, nearest);
+			}
+			for(int cx = ccx - ring; cx <= ccx + ring; cx++){
+				boolean edge = (cx == ccx - ring || cx == ccx + ring);
+				int step = edge ? 1 : ring * 2;
+				for(int cz = ccz - ring; cz <= ccz + ring; cz += Math.max(step, 1)){
+					ArrayList<AddressMapping> cell = cells.get(cellKey(cx, cz));
+					if(cell == null) continue;
+					for(int i = 0; i < cell.size(); i++){
+						AddressMapping map = cell.get(i);
+						long dst = distanceSq(map, x, y, z);
+						if(dst < best){
+							best = dst;
+							nearest = map;
+						}
+					}
+				}
+			}
+			long reach = ((long) ring) * CELL_SIZE;
+			if(nearest != null && best <= reach * reach) break;
+		}
+		return nearest;
+	}
+	
+	private static AddressMapping nearestOf(Collection<AddressMapping> maps, int x, int y, int z, long best, AddressMapping nearest){
+		for(AddressMapping map : maps){
+			long dst = distanceSq(map, x, y, z);
+			if(dst < best){
+				best = dst;
+				nearest = map;
+			}
+		}
+		return nearest;
+	}
+	
+	private static long distanceSq(AddressMapping map, int x, int y, int z){
+		long dx = x - map.getXCoord();
+		long dy = y - map.getYCoord();
+		long dz = z - map.getZCoord();
+		return dx*dx + dy*dy + dz*dz;
+	}
+}
@@ -0,0 +1,188 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import lordfokas.stargatetech2.api.stargate.Address;
+import lordfokas.stargatetech2.api.stargate.Symbol;
+import lordfokas.stargatetech2.util.ByteUtil;
+import lordfokas.stargatetech2.util.StargateLogger;
+
+/**
+ * On-disk format of addresses.dat and prefixes.dat.
+ *
+ * Every file starts with a header: magic, format version, record count and the CRC32 of the body.
+ * Addresses are grouped by dimension so each dimension id is written once per group, and
+ * each entry is the packed address as a varint followed by zig-zag varint coordinates.
+ * Prefixes are stored as a zig-zag varint dimension followed by one byte per symbol.
+ *
+ * Files without the magic are read with the legacy layout of 4 byte ints everywhere.
+ */
+public class NetworkFormat {
+	public static final int VERSION = 1;
+	private static final int ADDRESS_MAGIC = 0x53474E41; // SGNA
+	private static final int PREFIX_MAGIC  = 0x53474E50; // SGNP
+	
+	private static final Comparator<AddressMapping> BY_DIMENSION = new Comparator<AddressMapping>(){
+		@Override
+		public int compare(AddressMapping a, AddressMapping b){
+			return a.getDimension() < b.getDimension() ? -1 : (a.getDimension() == b.getDimension() ? 0 : 1);
+		}
+	};
+	
+	private NetworkFormat(){}
+	
+	// ##################################################################
+	// Writing
+	
+	public static void writeAddresses(DataOutputStream dos, AddressMapping[] mappings) throws IOException{
+		AddressMapping[] sorted = Arrays.copyOf(mappings, mappings.length);
+		Arrays.sort(sorted, BY_DIMENSION);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(mappings.length * 8 + 16);
+		DataOutputStream body = new DataOutputStream(bytes);
+		int start = 0;
+		while(start < sorted.length){
+			int dim = sorted[start].getDimension();
+			int end = start;
+			while(end < sorted.length && sorted[end].getDimension() == dim) end++;
+			ByteUtil.writeVarInt(body, dim);
+			ByteUtil.writeVarLong(body, end - start);
+			for(int i = start; i < end; i++){
+				AddressMapping map = sorted[i];
+				ByteUtil.writeVarLong(body, map.getAddress().pack());
+				ByteUtil.writeVarInt(body, map.getXCoord());
+				ByteUtil.writeVarInt(body, map.getYCoord());
+				ByteUtil.writeVarInt(body, map.getZCoord());
+			}
+			start = end;
+		}
+		body.close();
+		writeFile(dos, ADDRESS_MAGIC, sorted.length, bytes);
+	}
+	
+	public static void writePrefixes(DataOutputStream dos, int[] dimensions, DimensionPrefix[] prefixes) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(prefixes.length * 5 + 16);
+		DataOutputStream body = new DataOutputStream(bytes);
+		for(int i = 0; i < prefixes.length; i++){
+			ByteUtil.writeVarInt(body, dimensions[i]);
+			for(Symbol s : prefixes[i].getSymbols()){
+				body.writeByte(s.ordinal());
+			}
+		}
+		body.close();
+		writeFile(dos, PREFIX_MAGIC, prefixes.length, bytes);
+	}
+	
+	private static void writeFile(DataOutputStream dos, int magic, int count, ByteArrayOutputStream body) throws IOException{
+		byte[] data = body.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		dos.writeInt(magic);
+		dos.writeByte(VERSION);
+		dos.writeInt(count);
+		dos.writeInt((int) crc.getValue());
+		dos.write(data);
+	}
+	
+	// ##################################################################
+	// Reading
+	
+	public static ArrayList<AddressMapping> readAddresses(File file) throws IOException{
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			int first = dis.readInt();
+			if(first != ADDRESS_MAGIC){
+				StargateLogger.info("Importing legacy Stargate Network address file.");
+				ArrayList<AddressMapping> mappings = new ArrayList(first);
+				for(int i = 0; i < first; i++){
+					mappings.add(AddressMapping.readFromStream(dis));
+				}
+				return mappings;
+			}
+			readVersion(dis);
+			int count = dis.readInt();
+			DataInputStream body = readBody(dis, dis.readInt());
+			ArrayList<AddressMapping> mappings = new ArrayList(count);
+			while(mappings.size() < count){
+				int dim = ByteUtil.readVarInt(body);
+				long entries = ByteUtil.readVarLong(body);
+				for(long i = 0; i < entries; i++){
+					Address address = Address.unpack(ByteUtil.readVarLong(body));
+					int x = ByteUtil.readVarInt(body);
+					int y = ByteUtil.readVarInt(body);
+					int z = ByteUtil.readVarInt(body);
+					mappings.add(new AddressMapping(address, dim, x, y, z));
+				}
+			}
+			return mappings;
+		}finally{
+			dis.close();
+		}
+	}
+	
+	public static HashMap<Integer, DimensionPrefix> readPrefixes(File file) throws IOException{
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		HashMap<Integer, DimensionPrefix> prefixes = new HashMap();
+		try{
+			int first = dis.readInt();
+			if(first != PREFIX_MAGIC){
+				StargateLogger.info("Importing legacy Stargate Network prefix file.");
+				for(int i = 0; i < first; i++){
+					int d = dis.readInt();
+					Symbol[] symbols = new Symbol[]{
+						Symbol.get(dis.readInt()),
+						Symbol.get(dis.readInt()),
+						Symbol.get(dis.readInt())
+					};
+					prefixes.put(new Integer(d), new DimensionPrefix(symbols));
+				}
+				return prefixes;
+			}
+			readVersion(dis);
+			int count = dis.readInt();
+			DataInputStream body = readBody(dis, dis.readInt());
+			for(int i = 0; i < count; i++){
+				int d = ByteUtil.readVarInt(body);
+				Symbol[] symbols = new Symbol[]{
+					Symbol.get(body.readUnsignedByte()),
+					Symbol.get(body.readUnsignedByte()),
+					Symbol.get(body.readUnsignedByte())
+				};
+				prefixes.put(new Integer(d), new DimensionPrefix(symbols));
+			}
+			return prefixes;
+		}finally{
+			dis.close();
+		}
+	}
+	
+	private static void readVersion(DataInputStream dis) throws IOException{
+		int version = dis.readUnsignedByte();
+		if(version > VERSION) throw new IOException("Unsupported Stargate Network file version: " + version);
+	}
+	
+	private static DataInputStream readBody(DataInputStream dis, int crc) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = dis.read(buffer)) > 0){
+			bytes.write(buffer, 0, read);
+		}
+		byte[] data = bytes.toByteArray();
+		CRC32 check = new CRC32();
+		check.update(data, 0, data.length);
+		if((int) check.getValue() != crc) throw new IOException("Stargate Network file checksum mismatch!");
+		return new DataInputStream(new ByteArrayInputStream(data));
+	}
+}
@@ -0,0 +1,232 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import lordfokas.stargatetech2.api.stargate.Symbol;
+import lordfokas.stargatetech2.util.StargateLogger;
+
+/**
+ * Append-only log of the changes made to the Stargate Network since the last full save.
+ *
+ * Changes are recorded on the server thread into an in-memory batch. Every save the batch
+ * is appended to the journal file as one frame (length, CRC32, records), so a crash loses
+ * at most the records that were still in memory. A torn or corrupt frame at the end of the
+ * file is ignored on load, along with anything after it.
+ *
+ * The journal header carries the generation of the base files it applies to. A compaction
+ * writes new base files, bumps the generation and starts a new empty journal, so a journal
+ * left behind by an interrupted compaction is never replayed over newer base files.
+ */
+public class NetworkJournal {
+	private static final int MAGIC = 0x53474A4E; // SGJN
+	private static final int HEADER_SIZE = 12;
+	
+	public static final byte ADDRESS_ADDED		= 1;
+	public static final byte ADDRESS_REMOVED	= 2;
+	public static final byte PREFIX_ADDED		= 3;
+	public static final byte WORMHOLE_OPENED	= 4;
+	public static final byte WORMHOLE_CLOSED	= 5;
+	
+	private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private DataOutputStream batch = new DataOutputStream(bytes);
+	private int batchRecords = 0;
+	private int journalRecords = 0;
+	
+	// ##################################################################
+	// Recording (server thread)
+	
+	public void addressAdded(AddressMapping mapping){
+		try{
+			batch.writeByte(ADDRESS_ADDED);
+			batch.writeLong(mapping.getAddress().pack());
+			batch.writeInt(mapping.getDimension());
+			batch.writeInt(mapping.getXCoord());
+			batch.writeInt(mapping.getYCoord());
+			batch.writeInt(mapping.getZCoord());
+			batchRecords++;
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to record a Stargate Network change");
+			e.printStackTrace();
+		}
+	}
+	
+	public void addressRemoved(AddressMapping mapping){
+		try{
+			batch.writeByte(ADDRESS_REMOVED);
+			batch.writeLong(mapping.getAddress().pack());
+			batchRecords++;
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to record a Stargate Network change");
+			e.printStackTrace();
+		}
+	}
+	
+	public void prefixAdded(int dimension, DimensionPrefix prefix){
+		try{
+			batch.writeByte(PREFIX_ADDED);
+			batch.writeInt(dimension);
+			for(Symbol s : prefix.getSymbols()){
+				batch.writeByte(s.ordinal());
+			}
+			batchRecords++;
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to record a Stargate Network change");
+			e.printStackTrace();
+		}
+	}
+	
+	public void wormholeOpened(Wormhole wormhole){
+		try{
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(record);
+			wormhole.writeToStream(dos);
+			dos.close();
+			batch.writeByte(WORMHOLE_OPENED);
+			record.writeTo(batch);
+			batchRecords++;
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to record a Stargate Network change");
+			e.printStackTrace();
+		}
+	}
+	
+	public void wormholeClosed(Wormhole wormhole){
+		try{
+			batch.writeByte(WORMHOLE_CLOSED);
+			wormhole.writeSourceToStream(batch);
+			batchRecords++;
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to record a Stargate Network change");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return Whether there are records that haven't been handed over to be written yet.
+	 */
+	public boolean hasPendingRecords(){
+		return batchRecords > 0;
+	}
+	
+	/**
+	 * @return How many records the journal file will hold once all batches are written.
+	 */
+	public int getJournalRecords(){
+		return journalRecords + batchRecords;
+	}
+	
+	/**
+	 * Takes the records recorded so far as a single frame, ready to be appended.
+	 */
+	public byte[] takeBatch() throws IOException{
+		batch.flush();
+		byte[] records = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(records, 0, records.length);
+		ByteBuffer frame = ByteBuffer.allocate(records.length + 12);
+		frame.putInt(records.length);
+		frame.putLong(crc.getValue());
+		frame.put(records);
+		journalRecords += batchRecords;
+		clearBatch();
+		return frame.array();
+	}
+	
+	/**
+	 * Forgets the records in the journal file. Called once a full snapshot is on disk,
+	 * as it already contains them and starts a new journal.
+	 */
+	public void compacted(){
+		journalRecords = 0;
+	}
+	
+	private void clearBatch(){
+		bytes = new ByteArrayOutputStream();
+		batch = new DataOutputStream(bytes);
+		batchRecords = 0;
+	}
+	
+	// ##################################################################
+	// Writing (I/O thread)
+	
+	public static void append(File journal, byte[] frame) throws IOException{
+		FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		try{
+			ByteBuffer buffer = ByteBuffer.wrap(frame);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}finally{
+			channel.close();
+		}
+	}
+	
+	public static void writeHeader(DataOutputStream dos, long generation) throws IOException{
+		dos.writeInt(MAGIC);
+		dos.writeLong(generation);
+	}
+	
+	// ##################################################################
+	// Reading
+	
+	/**
+	 * Reads all the intact frames in a journal that belongs to the given generation.
+	 *
+	 * @return The records of each frame, in order. Empty if the journal is missing or stale.
+	 */
+	public static ArrayList<byte[]> read(File journal, long generation) throws IOException{
+		ArrayList<byte[]> frames = new ArrayList();
+		if(!journal.exists() || journal.length() < HEADER_SIZE) return frames;
+		InputStream in = Channels.newInputStream(FileChannel.open(journal.toPath(), StandardOpenOption.READ));
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+		try{
+			if(dis.readInt() != MAGIC){
+				StargateLogger.error("The Stargate Network journal has an invalid header and will be ignored.");
+				return frames;
+			}
+			long journalGeneration = dis.readLong();
+			if(journalGeneration != generation){
+				StargateLogger.warning("Ignoring a stale Stargate Network journal (generation " + journalGeneration + ", expected " + generation + ").");
+				return frames;
+			}
+			while(true){
+				int length;
+				try{
+					length = dis.readInt();
+				}catch(EOFException e){
+					break;
+				}
+				try{
+					long expected = dis.readLong();
+					if(length < 0 || length > journal.length()) throw new IOException("Invalid frame length");
+					byte[] records = new byte[length];
+					dis.readFully(records);
+					CRC32 crc = new CRC32();
+					crc.update(records, 0, records.length);
+					if(crc.getValue() != expected) throw new IOException("Checksum mismatch");
+					frames.add(records);
+				}catch(IOException e){
+					StargateLogger.warning("Discarding a damaged frame at the end of the Stargate Network journal: " + e.getMessage());
+					break;
+				}
+			}
+		}finally{
+			dis.close();
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,358 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lordfokas.stargatetech2.util.StargateLogger;
+
+/**
+ * Writes the Stargate Network files on a dedicated I/O thread.
+ *
+ * The server thread only takes a {@link Snapshot} of the network, which is cheap because
+ * address mappings and prefixes are immutable and can be shared. The snapshot is then
+ * serialized through buffered channels into temporary files. Once all of them are on disk a
+ * commit marker listing them is written, and only then are they moved over the old ones.
+ * The marker is what makes the new set official: a crash before it is written leaves the
+ * old files untouched, and a crash after it is finished by {@link #recover(File)} on the next
+ * start, so the base files, the generation and the journal always belong together.
+ *
+ * A snapshot carries the journal records taken since the last frame was appended. If it
+ * fails before its marker is written those records are appended to the old journal instead,
+ * so nothing is lost, and the snapshot reports the failure so the network keeps its old
+ * generation. The network polls {@link Snapshot#isDone()} on its next save.
+ *
+ * If a newer snapshot is submitted while the last one is still waiting for the I/O thread,
+ * the waiting one is dropped and only the newest is written; it holds everything the old one
+ * did, and takes over its journal frame in case it fails.
+ *
+ * Between snapshots only journal frames are appended (see {@link NetworkJournal}).
+ * Tasks run in the order they were submitted, so a frame is never written before
+ * the snapshot it follows.
+ */
+public class NetworkPersistence {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final ExecutorService executor;
+	private final Object lock = new Object();
+	private Snapshot queued;
+	
+	/**
+	 * An immutable copy of everything that goes into the network files.
+	 */
+	public static final class Snapshot{
+		private static final int PENDING = 0, COMMITTED = 1, FAILED = 2, SUPERSEDED = 3;
+		
+		public final File wormholeFile, addressFile, prefixFile, journalFile, generationFile, allocatorFile, commitFile;
+		public final long generation;
+		public final byte[] wormholes;
+		public final AddressMapping[] addresses;
+		public final int[] dimensions;
+		public final DimensionPrefix[] prefixes;
+		public final byte[] allocator;
+		/** The journal frames this snapshot replaces, null if there were no new records. */
+		private byte[] frame;
+		private volatile int result = PENDING;
+		
+		public Snapshot(File wormholeFile, File addressFile, File prefixFile, File journalFile, File generationFile, File allocatorFile, File commitFile, long generation,
+				byte[] wormholes, AddressMapping[] addresses, int[] dimensions, DimensionPrefix[] prefixes, byte[] allocator, byte[] frame){
+			this.wormholeFile = wormholeFile;
+			this.addressFile = addressFile;
+			this.prefixFile = prefixFile;
+			this.journalFile = journalFile;
+			this.generationFile = generationFile;
+			this.allocatorFile = allocatorFile;
+			this.commitFile = commitFile;
+			this.generation = generation;
+			this.wormholes = wormholes;
+			this.addresses = addresses;
+			this.dimensions = dimensions;
+			this.prefixes = prefixes;
+			this.allocator = allocator;
+			this.frame = frame;
+		}
+		
+		/**
+		 * @return Whether the I/O thread is done with this snapshot, either way.
+		 */
+		public boolean isDone(){
+			return result != PENDING;
+		}
+		
+		/**
+		 * @return Whether this snapshot made it to disk. Only meaningful once it's done.
+		 */
+		public boolean isCommitted(){
+			return result == COMMITTED;
+		}
+	}
+	
+	public NetworkPersistence(){
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, "StargateTech2 Network I/O");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Queues a snapshot to be written in the background.
+	 * Once it is on disk the journal is restarted for the snapshot's generation.
+	 * No journal frames may be appended until the snapshot is done.
+	 */
+	public void submit(Snapshot snapshot){
+		synchronized(lock){
+			Snapshot waiting = queued;
+			queued = snapshot;
+			if(waiting != null){
+				// Still not started, so the task queued for it will write this one instead.
+				snapshot.frame = concat(waiting.frame, snapshot.frame);
+				waiting.result = Snapshot.SUPERSEDED;
+				return;
+			}
+		}
+		executor.execute(new Runnable(){
+			@Override
+			public void run(){
+				Snapshot next;
+				synchronized(lock){
+					next = queued;
+					queued = null;
+				}
+				write(next);
+			}
+		});
+	}
+	
+	private static byte[] concat(byte[] first, byte[] second){
+		if(first == null) return second;
+		if(second == null) return first;
+		byte[] both = new byte[first.length + second.length];
+		System.arraycopy(first, 0, both, 0, first.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+		return both;
+	}
+	
+	/**
+	 * Queues a journal frame to be appended in the background.
+	 */
+	public void append(final File journal, final byte[] frame){
+		executor.execute(new Runnable(){
+			@Override
+			public void run(){
+				try{
+					NetworkJournal.append(journal, frame);
+				}catch(Exception e){
+					StargateLogger.error("There was an error while trying to append to the Stargate Network journal");
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Runs every queued task and stops the I/O thread. Blocks until everything is on disk.
+	 */
+	public void shutdown(){
+		executor.shutdown();
+		try{
+			if(!executor.awaitTermination(30, TimeUnit.SECONDS)){
+				StargateLogger.error("Timed out while waiting for the Stargate Network files to be written!");
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void write(Snapshot snapshot){
+		boolean committed = false;
+		try{
+			writeWormholes(snapshot);
+			writeAddresses(snapshot);
+			writePrefixes(snapshot);
+			writeAllocator(snapshot);
+			writeGeneration(snapshot);
+			writeJournal(snapshot);
+			File[] files = new File[]{
+				snapshot.wormholeFile, snapshot.addressFile, snapshot.prefixFile,
+				snapshot.allocatorFile, snapshot.generationFile, snapshot.journalFile
+			};
+			writeMarker(snapshot.commitFile, files);
+			committed = true;
+			for(File file : files){
+				commit(file);
+			}
+			snapshot.commitFile.delete();
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to write Stargate Network files");
+			e.printStackTrace();
+			if(committed) finish(snapshot);
+			else fallBack(snapshot);
+		}
+		snapshot.result = committed ? Snapshot.COMMITTED : Snapshot.FAILED;
+	}
+	
+	/**
+	 * The marker is on disk, so the snapshot is official. Try to move the rest into place now,
+	 * or it will be done on the next start.
+	 */
+	private static void finish(Snapshot snapshot){
+		try{
+			recover(snapshot.commitFile);
+		}catch(Exception e){
+			StargateLogger.error("The Stargate Network files will be finished on the next start");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * The old files are still in place, so keep the records this snapshot would have saved
+	 * by appending them to the old journal.
+	 */
+	private static void fallBack(Snapshot snapshot){
+		if(snapshot.frame == null) return;
+		try{
+			NetworkJournal.append(snapshot.journalFile, snapshot.frame);
+		}catch(Exception e){
+			StargateLogger.error("There was an error while trying to append to the Stargate Network journal");
+			e.printStackTrace();
+		}
+	}
+	
+	private void writeWormholes(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.wormholeFile);
+		try{
+			dos.write(snapshot.wormholes);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private void writeAddresses(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.addressFile);
+		try{
+			NetworkFormat.writeAddresses(dos, snapshot.addresses);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private void writePrefixes(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.prefixFile);
+		try{
+			NetworkFormat.writePrefixes(dos, snapshot.dimensions, snapshot.prefixes);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private void writeAllocator(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.allocatorFile);
+		try{
+			dos.write(snapshot.allocator);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private void writeGeneration(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.generationFile);
+		try{
+			dos.writeLong(snapshot.generation);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private void writeJournal(Snapshot snapshot) throws IOException{
+		DataOutputStream dos = open(snapshot.journalFile);
+		try{
+			NetworkJournal.writeHeader(dos, snapshot.generation);
+		}finally{
+			dos.close();
+		}
+	}
+	
+	private static void writeMarker(File marker, File[] files) throws IOException{
+		DataOutputStream dos = open(marker);
+		try{
+			dos.writeInt(files.length);
+			for(File file : files){
+				dos.writeUTF(file.getName());
+			}
+		}finally{
+			dos.close();
+		}
+		commit(marker);
+	}
+	
+	/**
+	 * Finishes a snapshot that was committed but not fully moved into place when the server stopped.
+	 * Must run before the network files are read.
+	 */
+	public static void recover(File marker) throws IOException{
+		if(!marker.exists()) return;
+		DataInputStream dis = new DataInputStream(new FileInputStream(marker));
+		File[] files;
+		try{
+			files = new File[dis.readInt()];
+			for(int i = 0; i < files.length; i++){
+				files[i] = new File(marker.getParentFile(), dis.readUTF());
+			}
+		}finally{
+			dis.close();
+		}
+		for(File file : files){
+			// Files moved before the crash have no temporary left.
+			if(temp(file).exists()) commit(file);
+		}
+		marker.delete();
+		StargateLogger.info("Finished writing Stargate Network files interrupted by the last shutdown.");
+	}
+	
+	private static File temp(File file){
+		return new File(file.getPath() + ".tmp");
+	}
+	
+	private static DataOutputStream open(File file) throws IOException{
+		final FileChannel channel = FileChannel.open(temp(file).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)){
+			@Override
+			public void close() throws IOException{
+				try{
+					flush();
+					channel.force(true);
+				}finally{
+					super.close();
+				}
+			}
+		};
+	}
+	
+	private static void commit(File file) throws IOException{
+		Path source = temp(file).toPath();
+		Path target = file.toPath();
+		try{
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}catch(AtomicMoveNotSupportedException e){
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import lordfokas.stargatetech2.api.stargate.Address;
+import lordfokas.stargatetech2.util.LongObjectMap;
+
+/**
+ * A read only copy of the parts of the Stargate Network that other mods ask about.
+ *
+ * Views are never modified once built, so any thread can read one without locking.
+ * The network builds a new view at the end of any tick in which addresses or prefixes
+ * changed and publishes it through a volatile field; readers on other threads see the
+ * network as of the last published view, at most a tick behind.
+ *
+ * A new view shares everything that didn't change with the one before it. Addresses are
+ * split in shards by hash and gates are indexed per dimension, and only the shards and
+ * dimensions that were touched since the last view are copied.
+ */
+public final class NetworkView {
+	private static final int SHARDS = 64;
+	public static final NetworkView EMPTY = new NetworkView();
+	
+	private final long version;
+	private final LongObjectMap<AddressMapping>[] addresses;
+	private final HashMap<Integer, GateIndex> gates;
+	private final int[] prefixes;
+	
+	private NetworkView(){
+		version = 0;
+		addresses = new LongObjectMap[SHARDS];
+		for(int i = 0; i < SHARDS; i++){
+			addresses[i] = new LongObjectMap();
+		}
+		gates = new HashMap();
+		prefixes = new int[0];
+	}
+	
+	private NetworkView(long version, LongObjectMap<AddressMapping>[] addresses, HashMap<Integer, GateIndex> gates, int[] prefixes){
+		this.version = version;
+		this.addresses = addresses;
+		this.gates = gates;
+		this.prefixes = prefixes;
+	}
+	
+	/**
+	 * Builds the view that follows this one.
+	 *
+	 * @param live The network's addresses, as they are now.
+	 * @param changed Every address added, moved or removed since this view was built.
+	 * @param liveGates The network's gate indexes, as they are now.
+	 * @param dimensions Every dimension whose gates changed since this view was built.
+	 * @param takenPrefixes The taken prefixes if they changed, null to keep this view's.
+	 */
+	NetworkView next(long version, LongObjectMap<AddressMapping> live, Collection<Address> changed,
+			Map<Integer, GateIndex> liveGates, Collection<Integer> dimensions, int[] takenPrefixes){
+		LongObjectMap<AddressMapping>[] shards = addresses.clone();
+		boolean[] copied = new boolean[SHARDS];
+		for(Address address : changed){
+			long key = address.pack();
+			int shard = shard(key);
+			if(!copied[shard]){
+				shards[shard] = copy(addresses[shard]);
+				copied[shard] = true;
+			}
+			AddressMapping mapping = live.get(key);
+			if(mapping == null){
+				shards[shard].remove(key);
+			}else{
+				shards[shard].put(key, mapping);
+			}
+		}
+		HashMap<Integer, GateIndex> indexes = gates;
+		if(!dimensions.isEmpty()){
+			indexes = new HashMap(gates);
+			for(Integer dim : dimensions){
+				GateIndex index = liveGates.get(dim);
+				if(index == null || index.isEmpty()){
+					indexes.remove(dim);
+				}else{
+					GateIndex copy = new GateIndex();
+					for(AddressMapping mapping : index.all()){
+						copy.add(mapping);
+					}
+					indexes.put(dim, copy);
+				}
+			}
+		}
+		int[] taken = prefixes;
+		if(takenPrefixes != null){
+			taken = takenPrefixes;
+			Arrays.sort(taken);
+		}
+		return new NetworkView(version, shards, indexes, taken);
+	}
+	
+	private static int shard(long key){
+		return (int)(key ^ (key >>> 32) ^ (key >>> 16)) & (SHARDS - 1);
+	}
+	
+	private static LongObjectMap<AddressMapping> copy(LongObjectMap<AddressMapping> shard){
+		LongObjectMap<AddressMapping> copy = new LongObjectMap(shard.size() + 1);
+		for(AddressMapping mapping : shard.values()){
+			copy.put(mapping.getAddress().pack(), mapping);
+		}
+		return copy;
+	}
+	
+	/**
+	 * @return How many views were published before this one. Views with the same version hold the same data.
+	 */
+	public long getVersion(){
+		return version;
+	}
+	
+	public boolean addressExists(Address address){
+		if(address == null) return false;
+		long key = address.pack();
+		return addresses[shard(key)].containsKey(key);
+	}
+	
+	public AddressMapping getAddressMapping(Address address){
+		if(address == null) return null;
+		long key = address.pack();
+		return addresses[shard(key)].get(key);
+	}
+	
+	public Address getAddressOf(int dimension, int x, int y, int z){
+		GateIndex index = gates.get(dimension);
+		if(index == null) return null;
+		AddressMapping mapping = index.get(x, y, z);
+		return mapping == null ? null : mapping.getAddress();
+	}
+	
+	public Address findNearestStargate(int dimension, int x, int y, int z, int radius){
+		GateIndex index = gates.get(dimension);
+		if(index == null) return null;
+		AddressMapping mapping = index.nearest(x, y, z, radius);
+		return mapping == null ? null : mapping.getAddress();
+	}
+	
+	/**
+	 * @param prefix A packed {@link DimensionPrefix}.
+	 * @return Whether the prefix belongs to a dimension or is reserved.
+	 */
+	public boolean prefixExists(int prefix){
+		return Arrays.binarySearch(prefixes, prefix) >= 0;
+	}
+}
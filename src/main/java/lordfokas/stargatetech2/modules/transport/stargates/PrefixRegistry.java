@@ -0,0 +1,168 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.ArrayList;
+
+import lordfokas.stargatetech2.api.stargate.IDynamicWorldLoader;
+import lordfokas.stargatetech2.api.stargate.Symbol;
+import lordfokas.stargatetech2.util.LongObjectMap;
+
+/**
+ * Two way mapping between dimensions and their prefixes, plus the prefixes reserved by dynamic world loaders.
+ *
+ * Prefixes are keyed on their packed int form, so resolving the prefix of a dialed
+ * address to a dimension or loader is a single table lookup.
+ */
+public class PrefixRegistry {
+	private static final int NO_DIMENSION = Integer.MIN_VALUE;
+	
+	private static final class Entry{
+		final DimensionPrefix prefix;
+		int dimension = NO_DIMENSION;
+		IDynamicWorldLoader loader;
+		
+		Entry(DimensionPrefix prefix){
+			this.prefix = prefix;
+		}
+	}
+	
+	private final LongObjectMap<Entry> byPrefix = new LongObjectMap();
+	private final LongObjectMap<Entry> byDimension = new LongObjectMap();
+	private int reservedCount = 0;
+	
+	private Entry entry(DimensionPrefix prefix){
+		Entry entry = byPrefix.get(prefix.pack());
+		if(entry == null){
+			entry = new Entry(prefix);
+			byPrefix.put(prefix.pack(), entry);
+		}
+		return entry;
+	}
+	
+	// ##################################################################
+	// Dimensions
+	
+	/**
+	 * Binds a prefix to a dimension, replacing the dimension's previous prefix, if any.
+	 */
+	public void assign(int dimension, DimensionPrefix prefix){
+		Entry old = byDimension.get(dimension);
+		if(old != null){
+			old.dimension = NO_DIMENSION;
+			if(old.loader == null) byPrefix.remove(old.prefix.pack());
+		}
+		Entry entry = entry(prefix);
+		if(entry.dimension != NO_DIMENSION){
+			byDimension.remove(entry.dimension);
+		}
+		entry.dimension = dimension;
+		byDimension.put(dimension, entry);
+	}
+	
+	/**
+	 * @return The prefix of this dimension, or null if it doesn't have one yet.
+	 */
+	public DimensionPrefix getPrefix(int dimension){
+		Entry entry = byDimension.get(dimension);
+		return entry == null ? null : entry.prefix;
+	}
+	
+	/**
+	 * @return The dimension bound to this prefix, or null if it has none.
+	 */
+	public Integer getDimension(int prefix){
+		Entry entry = byPrefix.get(prefix);
+		return entry == null || entry.dimension == NO_DIMENSION ? null : entry.dimension;
+	}
+	
+	public boolean hasPrefix(int dimension){
+		return byDimension.containsKey(dimension);
+	}
+	
+	/**
+	 * @return Whether this prefix already belongs to a dimension.
+	 */
+	public boolean isAssigned(int prefix){
+		Entry entry = byPrefix.get(prefix);
+		return entry != null && entry.dimension != NO_DIMENSION;
+	}
+	
+	public boolean isAssigned(Symbol s0, Symbol s1, Symbol s2){
+		return isAssigned(DimensionPrefix.pack(s0, s1, s2));
+	}
+	
+	// ##################################################################
+	// Reservations
+	
+	/**
+	 * @return Whether the reservation was made, false if the prefix was already reserved.
+	 */
+	public boolean reserve(DimensionPrefix prefix, IDynamicWorldLoader loader){
+		Entry entry = entry(prefix);
+		if(entry.loader != null) return false;
+		entry.loader = loader;
+		reservedCount++;
+		return true;
+	}
+	
+	/**
+	 * @return The loader that reserved this prefix, or null if it isn't reserved.
+	 */
+	public IDynamicWorldLoader getLoader(int prefix){
+		Entry entry = byPrefix.get(prefix);
+		return entry == null ? null : entry.loader;
+	}
+	
+	public boolean isReserved(int prefix){
+		return getLoader(prefix) != null;
+	}
+	
+	/**
+	 * @return Whether the prefix is either bound to a dimension or reserved.
+	 */
+	public boolean isTaken(int prefix){
+		return byPrefix.containsKey(prefix);
+	}
+	
+	// ##################################################################
+	// Iteration
+	
+	public int dimensionCount(){
+		return byDimension.size();
+	}
+	
+	public int reservedCount(){
+		return reservedCount;
+	}
+	
+	public ArrayList<DimensionPrefix> getReservedPrefixes(){
+		ArrayList<DimensionPrefix> reserved = new ArrayList(reservedCount);
+		for(Entry entry : byPrefix.values()){
+			if(entry.loader != null) reserved.add(entry.prefix);
+		}
+		return reserved;
+	}
+	
+	/**
+	 * @return Every prefix that is bound to a dimension or reserved, packed.
+	 */
+	public int[] getTakenPrefixes(){
+		int[] taken = new int[byPrefix.size()];
+		int i = 0;
+		for(Entry entry : byPrefix.values()){
+			taken[i++] = entry.prefix.pack();
+		}
+		return taken;
+	}
+	
+	/**
+	 * Copies every dimension and its prefix into the given arrays, in matching order.
+	 */
+	public void getAssignments(int[] dimensions, DimensionPrefix[] prefixes){
+		int i = 0;
+		for(Entry entry : byDimension.values()){
+			dimensions[i] = entry.dimension;
+			prefixes[i] = entry.prefix;
+			i++;
+		}
+	}
+}
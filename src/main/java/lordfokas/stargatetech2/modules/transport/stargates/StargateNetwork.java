@@ -1,53 +1,74 @@
 package lordfokas.stargatetech2.modules.transport.stargates;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Random;
-import java.util.Set;
+import java.util.Map;
 
 import lordfokas.stargatetech2.api.stargate.Address;
 import lordfokas.stargatetech2.api.stargate.DialError;
 import lordfokas.stargatetech2.api.stargate.DialEvent;
+import lordfokas.stargatetech2.api.stargate.IDialCallback;
 import lordfokas.stargatetech2.api.stargate.IDynamicWorldLoader;
 import lordfokas.stargatetech2.api.stargate.IStargateNetwork;
 import lordfokas.stargatetech2.api.stargate.Symbol;
-import lordfokas.stargatetech2.modules.transport.TileStargate;
-import lordfokas.stargatetech2.util.ChunkLoader;
+import lordfokas.stargatetech2.modules.transport.TeleportQueue;
+import lordfokas.stargatetech2.util.BloomFilter;
 import lordfokas.stargatetech2.util.ConfigServer;
 import lordfokas.stargatetech2.util.Helper;
+import lordfokas.stargatetech2.util.LongObjectMap;
 import lordfokas.stargatetech2.util.StargateLogger;
 import lordfokas.stargatetech2.util.api.SeedingShip;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.tileentity.TileEntity;
 import net.minecraft.world.World;
-import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 
 public class StargateNetwork implements IStargateNetwork{
 	private static final StargateNetwork INSTANCE = new StargateNetwork();
 	public static final long MIN_SAVE_INTERVAL_MS = 5000;
 	public static final int RANDOM_ADDRESS_LENGTH = 8;
+	public static final int JOURNAL_COMPACTION_THRESHOLD = 4096;
 	
 	private boolean isLoaded;
-	private HashMap<DimensionPrefix, IDynamicWorldLoader> reserved;
-	private HashMap<Integer, DimensionPrefix> prefixes;
-	private HashMap<Address, AddressMapping> addresses;
-	private ArrayList<Wormhole> activeWormholes;
+	private PrefixRegistry prefixes;
+	private LongObjectMap<AddressMapping> addresses;
+	private HashMap<Integer, GateIndex> gates;
+	private WormholeScheduler wormholes;
+	private ArrayList<DialSequence> dialing;
+	private LongObjectMap<DialPrewarm> prewarming;
+	private ArrayList<DialPrewarm> idlePrewarms;
 	private LinkedList<IDynamicWorldLoader> loaders;
 	private Address dynamicLoadingAddr = null;
 	private DimensionPrefix dynamicLoadingPrefix = null;
 	private long saveTime;
+	private NetworkPersistence persistence;
+	private NetworkJournal journal;
+	private long generation;
+	private NetworkPersistence.Snapshot snapshot;
+	private AddressAllocator allocator;
+	private BloomFilter dialable;
+	private boolean dialableDirty;
+	private DialLimiter limiter;
+	private long ticks;
+	private long dialsRequested, dialsRateLimited, dialsRejected;
+	private volatile NetworkView view = NetworkView.EMPTY;
+	private LongObjectMap<Address> viewAddresses;
+	private HashSet<Integer> viewDimensions;
+	private boolean viewPrefixes;
+	private long viewVersion;
+	private Thread serverThread;
 	
 	public static StargateNetwork instance(){
 		return INSTANCE;
@@ -55,30 +76,80 @@ public class StargateNetwork implements IStargateNetwork{
 	
 	private StargateNetwork(){
 		MinecraftForge.EVENT_BUS.register(this);
+		FMLCommonHandler.instance().bus().register(this);
 		isLoaded = false;
 		saveTime = 0;
 	}
 	
 	@SubscribeEvent
 	public void save(WorldEvent.Save event){
+		if(!isLoaded) return;
 		long newSaveTime = System.currentTimeMillis();
 		if(newSaveTime > saveTime + MIN_SAVE_INTERVAL_MS){
 			saveTime = newSaveTime;
-			writeToFile();
+			if(snapshot != null){
+				if(!snapshot.isDone()) return; // frames can't be appended until it is.
+				if(snapshot.isCommitted()){
+					generation = snapshot.generation;
+					journal.compacted();
+				}
+				snapshot = null;
+			}
+			if(journal.getJournalRecords() >= JOURNAL_COMPACTION_THRESHOLD){
+				writeToFile();
+			}else if(journal.hasPendingRecords()){
+				writeJournal();
+			}
 		}
 	}
 	
 	public void load(){
-		reserved = new HashMap();
-		addresses = new HashMap();
-		prefixes = new HashMap();
-		activeWormholes = new ArrayList();
+		addresses = new LongObjectMap();
+		gates = new HashMap();
+		prefixes = new PrefixRegistry();
+		wormholes = new WormholeScheduler();
+		dialing = new ArrayList();
+		prewarming = new LongObjectMap();
+		idlePrewarms = new ArrayList();
 		loaders = new LinkedList();
+		persistence = new NetworkPersistence();
+		journal = new NetworkJournal();
+		generation = 0;
+		snapshot = null;
+		allocator = new AddressAllocator();
+		dialableDirty = true;
+		limiter = new DialLimiter();
+		view = NetworkView.EMPTY;
+		viewAddresses = new LongObjectMap();
+		viewDimensions = new HashSet();
+		viewPrefixes = true;
 		readFromFile();
+		writeToFile(); // folds the replayed journal into the base files.
+		FMLCommonHandler.instance().bus().register(wormholes);
+		serverThread = Thread.currentThread();
+		publishView();
 		isLoaded = true;
+		initializeWormholes();
 	}
 	
 	public void unload(){
+		if(isLoaded){
+			for(DialSequence sequence : dialing){
+				sequence.cancel();
+			}
+			dialing.clear();
+			for(DialPrewarm prewarm : prewarming.values()){
+				prewarm.releaseLease();
+			}
+			prewarming.clear();
+			FMLCommonHandler.instance().bus().unregister(wormholes);
+			wormholes.flushTransit();
+			TeleportQueue.clear();
+			writeToFile();
+			persistence.shutdown();
+		}
+		view = NetworkView.EMPTY;
+		serverThread = null;
 		isLoaded = false;
 	}
 	
@@ -97,13 +168,13 @@ public class StargateNetwork implements IStargateNetwork{
 		loaders.remove(dwl);
 	}
 	
-	private void dinamicallyLoadWorlds(AddressMapping dstmap, AddressMapping srcmap, Address destination){
+	void dinamicallyLoadWorlds(AddressMapping dstmap, AddressMapping srcmap, Address destination){
 		Symbol[] syms = new Symbol[]{destination.getSymbol(0), destination.getSymbol(1), destination.getSymbol(2)};
 		dynamicLoadingPrefix = new DimensionPrefix(syms);
 		dynamicLoadingAddr = destination;
-		if(srcmap != null && dstmap == null && !prefixes.containsValue(dynamicLoadingPrefix)){
-			if(reserved.containsKey(dynamicLoadingPrefix)){
-				IDynamicWorldLoader loader = reserved.get(dynamicLoadingPrefix);
+		if(srcmap != null && dstmap == null && !prefixes.isAssigned(dynamicLoadingPrefix.pack())){
+			IDynamicWorldLoader loader = prefixes.getLoader(dynamicLoadingPrefix.pack());
+			if(loader != null){
 				loader.loadWorldFor(destination, SeedingShip.SHIP);
 			}else{
 				Collections.shuffle(loaders);
@@ -120,53 +191,182 @@ public class StargateNetwork implements IStargateNetwork{
 	}
 	
 	public DialError dial(Address source, Address destination, int timeout){
+		return dial(source, destination, timeout, null);
+	}
+	
+	/**
+	 * Starts a dialing sequence. The sequence runs over the next few ticks,
+	 * and its outcome is delivered to the callback when it finishes.
+	 * 
+	 * @return {@link DialError#DIALING_STARTED} if the sequence started, the reason it didn't otherwise.
+	 */
+	public DialError dial(Address source, Address destination, int timeout, IDialCallback callback){
+		if(!isLoaded) return DialError.UNKNOWN_LOGIC_ERROR;
+		dialsRequested++;
+		if(isDialing(source)) return DialError.SOURCE_GATE_BUSY;
+		if(!limiter.tryAcquire(source, ticks)){
+			dialsRateLimited++;
+			return DialError.DIALING_RATE_LIMITED;
+		}
 		if (MinecraftForge.EVENT_BUS.post(new DialEvent.Pre(source, destination, timeout))) return DialError.DIALING_EVENT_CANCELED;
-		DialError error = DialError.UNKNOWN_LOGIC_ERROR;
-		AddressMapping srcmap = addresses.get(source);
-		AddressMapping dstmap = addresses.get(destination);
-		dinamicallyLoadWorlds(dstmap, srcmap, destination);
-		dstmap = addresses.get(destination);
-		if(srcmap != null && dstmap != null){
-			WorldServer srcworld = MinecraftServer.getServer().worldServerForDimension(srcmap.getDimension());
-			WorldServer dstworld = MinecraftServer.getServer().worldServerForDimension(dstmap.getDimension());
-			if(srcworld != null && dstworld != null && srcworld != dstworld){
-				long srcChunks = ChunkLoader.load9Chunks(srcworld, srcmap.getXCoord() >> 4, srcmap.getZCoord() >> 4);
-				long dstChunks = ChunkLoader.load9Chunks(dstworld, dstmap.getXCoord() >> 4, dstmap.getZCoord() >> 4);
-				if(srcChunks >= 0 && dstChunks >= 0){
-					TileEntity srcte = srcworld.getTileEntity(srcmap.getXCoord(), srcmap.getYCoord(), srcmap.getZCoord());
-					TileEntity dstte = dstworld.getTileEntity(dstmap.getXCoord(), dstmap.getYCoord(), dstmap.getZCoord());
-					if(srcte instanceof TileStargate && dstte instanceof TileStargate){
-						TileStargate src = (TileStargate) srcte;
-						TileStargate dst = (TileStargate) dstte;
-						if(src.canDial(8) && !dst.hasActiveWormhole()){
-							activeWormholes.add(new Wormhole(src, dst, srcChunks, dstChunks, timeout));
-							MinecraftForge.EVENT_BUS.post(new DialEvent.Success(source, destination, timeout));
-							return DialError.SUCCESSFULLY_DIALED;
-						}else{
-							if(dst.hasActiveWormhole()) error = DialError.TARGET_GATE_BUSY;
-							else error = DialError.NOT_ENOUGH_POWER;
-						}
-					}else{
-						if(!(srcte instanceof TileStargate)) error = DialError.SOURCE_GATE_NOT_FOUND;
-						else error = DialError.TARGET_GATE_NOT_FOUND;
-					}
-				}else{
-					if(srcChunks < 0) error = DialError.FAILED_CHUNKLOADING_SOURCE;
-					else error = DialError.FAILED_CHUNKLOADING_TARGET;
-				}
-				ChunkLoader.release(srcChunks);
-				ChunkLoader.release(dstChunks);
-			}else{
-				if(srcworld == null) error = DialError.SOURCE_WORLD_NOT_FOUND;
-				else if(dstworld == null) error = DialError.TARGET_WORLD_NOT_FOUND;
-				else if(dstworld == srcworld) error = DialError.CANNOT_DIAL_SAME_WORLD;
-			}
-		}else{
-			if(srcmap == null) error = DialError.SOURCE_ADDRESS_NOT_FOUND;
-			else error = DialError.TARGET_ADDRESS_NOT_FOUND;
+		if(isKnownToBeAbsent(destination)){
+			dialsRejected++;
+			MinecraftForge.EVENT_BUS.post(new DialEvent.Error(source, destination, DialError.TARGET_ADDRESS_NOT_FOUND));
+			return DialError.TARGET_ADDRESS_NOT_FOUND;
+		}
+		DialPrewarm prewarm = prewarming.remove(source.pack());
+		long lease = prewarm == null ? -1 : prewarm.takeLease();
+		dialing.add(new DialSequence(this, source, destination, timeout, callback, lease));
+		return DialError.DIALING_STARTED;
+	}
+	
+	/**
+	 * Tells the network a symbol of an address being dialed from this gate has locked.
+	 * For now that only happens through the bus "lock" action.
+	 * As the address narrows down, the destination world and chunks are loaded ahead of time,
+	 * so the final {@link #dial(Address, Address, int, IDialCallback)} doesn't have to wait for them.
+	 */
+	public void lockSymbol(Address source, Symbol symbol){
+		if(!isLoaded || source == null || symbol == null || symbol == Symbol.VOID) return;
+		DialPrewarm prewarm = prewarming.get(source.pack());
+		if(prewarm == null){
+			prewarm = new DialPrewarm(this, source.pack());
+			prewarming.put(source.pack(), prewarm);
+		}
+		prewarm.lock(symbol);
+	}
+	
+	/**
+	 * Forgets the symbols locked so far on this gate.
+	 */
+	public void clearSymbols(Address source){
+		if(!isLoaded || source == null) return;
+		DialPrewarm prewarm = prewarming.remove(source.pack());
+		if(prewarm != null) prewarm.releaseLease();
+	}
+	
+	Integer getPrefixDimension(Symbol s0, Symbol s1, Symbol s2){
+		return prefixes.getDimension(DimensionPrefix.pack(s0, s1, s2));
+	}
+	
+	ArrayList<AddressMapping> getGatesIn(int dimension){
+		GateIndex index = gates.get(dimension);
+		return index == null ? new ArrayList() : new ArrayList(index.all());
+	}
+	
+	/**
+	 * Checks whether dialing an address is certain to fail without touching
+	 * the address table or asking the dynamic world loaders.
+	 * False positives from the filter only mean the slow path is taken.
+	 */
+	private boolean isKnownToBeAbsent(Address address){
+		if(dialableDirty) rebuildDialableFilter();
+		if(dialable.mightContain(address.pack())) return false;
+		// A reserved prefix means its loader may still create the world for this address.
+		if(dialable.mightContain(prefixKey(address.getSymbol(0), address.getSymbol(1), address.getSymbol(2)))) return false;
+		return loaders.isEmpty() || prefixes.isAssigned(address.getSymbol(0), address.getSymbol(1), address.getSymbol(2));
+	}
+	
+	private void rebuildDialableFilter(){
+		dialable = new BloomFilter(Math.max(1024, (addresses.size() + prefixes.reservedCount()) * 2));
+		for(AddressMapping mapping : addresses.values()){
+			dialable.add(mapping.getAddress().pack());
+		}
+		for(DimensionPrefix prefix : prefixes.getReservedPrefixes()){
+			Symbol[] syms = prefix.getSymbols();
+			dialable.add(prefixKey(syms[0], syms[1], syms[2]));
+		}
+		dialableDirty = false;
+	}
+	
+	// Packed addresses always have a length in the low bits, so prefix keys (length 0) never collide with them.
+	private static long prefixKey(Symbol s0, Symbol s1, Symbol s2){
+		return (s0.ordinal() << 16) | (s1.ordinal() << 10) | (s2.ordinal() << 4);
+	}
+	
+	public long getDialsRequested(){
+		return dialsRequested;
+	}
+	
+	public long getDialsRateLimited(){
+		return dialsRateLimited;
+	}
+	
+	public long getDialsRejected(){
+		return dialsRejected;
+	}
+	
+	public boolean isDialing(Address source){
+		for(DialSequence sequence : dialing){
+			if(sequence.getSource().equals(source)) return true;
+		}
+		return false;
+	}
+	
+	@SubscribeEvent
+	public void tickDialing(TickEvent.ServerTickEvent event){
+		if(!isLoaded || event.phase != TickEvent.Phase.END) return;
+		ticks++;
+		if(isViewDirty()) publishView();
+		if(!prewarming.isEmpty()) tickPrewarming();
+		if(dialing.isEmpty()) return;
+		// Sequences may start new dials from their callbacks, so tick a copy.
+		for(DialSequence sequence : dialing.toArray(new DialSequence[dialing.size()])){
+			sequence.tick();
+			if(sequence.isDone()) dialing.remove(sequence);
+		}
+	}
+	
+	private void tickPrewarming(){
+		for(DialPrewarm prewarm : prewarming.values()){
+			if(!prewarm.tick()) idlePrewarms.add(prewarm);
+		}
+		for(DialPrewarm prewarm : idlePrewarms){
+			prewarming.remove(prewarm.source);
+			prewarm.releaseLease();
 		}
-		MinecraftForge.EVENT_BUS.post(new DialEvent.Error(source, destination, error));
-		return error;
+		idlePrewarms.clear();
+	}
+	
+	// ##################################################################
+	// Read view
+	
+	/**
+	 * @return The latest read only view of the network. Safe to call and use from any thread,
+	 * but it may be up to a tick behind; code on the server thread should ask the network instead.
+	 */
+	public NetworkView getView(){
+		return view;
+	}
+	
+	private boolean onServerThread(){
+		return Thread.currentThread() == serverThread;
+	}
+	
+	private boolean isViewDirty(){
+		return viewPrefixes || !viewAddresses.isEmpty();
+	}
+	
+	private void publishView(){
+		int[] taken = viewPrefixes ? prefixes.getTakenPrefixes() : null;
+		view = view.next(++viewVersion, addresses, viewAddresses.values(), gates, viewDimensions, taken);
+		viewAddresses.clear();
+		viewDimensions.clear();
+		viewPrefixes = false;
+	}
+	
+	private void markChanged(AddressMapping mapping){
+		viewAddresses.put(mapping.getAddress().pack(), mapping.getAddress());
+		viewDimensions.add(mapping.getDimension());
+	}
+	
+	AddressMapping getMapping(Address address){
+		return addresses.get(address.pack());
+	}
+	
+	void openWormhole(Wormhole wormhole){
+		wormholes.add(wormhole);
+		journal.wormholeOpened(wormhole);
 	}
 	
 	@Override
@@ -179,8 +379,9 @@ public class StargateNetwork implements IStargateNetwork{
 		}
 		
 		DimensionPrefix prefix = new DimensionPrefix(syms);
-		if(!reserved.containsKey(prefix)){
-			reserved.put(prefix, dwl);
+		if(prefixes.reserve(prefix, dwl)){
+			viewPrefixes = true;
+			if(!dialableDirty) dialable.add(prefixKey(syms[0], syms[1], syms[2]));
 			return true;
 		}
 		return false;
@@ -194,28 +395,21 @@ public class StargateNetwork implements IStargateNetwork{
 			if(s == null || s == Symbol.VOID) throw new IllegalArgumentException("The symbols must not be null or Symbol.VOID!");
 		}
 		
-		DimensionPrefix prefix = new DimensionPrefix(syms);
-		return reserved.containsKey(prefix) || prefixes.containsValue(prefix);
+		int packed = DimensionPrefix.pack(syms[0], syms[1], syms[2]);
+		if(onServerThread()) return prefixes.isTaken(packed);
+		return getView().prefixExists(packed);
 	}
 	
 	public void removeWormhole(Wormhole wormhole){
-		activeWormholes.remove(wormhole);
+		if(wormholes.remove(wormhole)){
+			journal.wormholeClosed(wormhole);
+		}
 	}
 	
 	public boolean canPlaceStargateAt(World w, int x, int y, int z){
 		if(!isLoaded) return false;
-		int dim = w.provider.dimensionId;
-		for(AddressMapping map : addresses.values()){
-			if(map.getDimension() == dim){
-				int dx = x - map.getXCoord();
-				int dy = y - map.getYCoord();
-				int dz = z - map.getZCoord();
-				if(dx*dx + dy*dy + dz*dz < ConfigServer.stargateMinDistance){
-					return false;
-				}
-			}
-		}
-		return true;
+		GateIndex index = gates.get(w.provider.dimensionId);
+		return index == null || !index.anyWithin(x, y, z, ConfigServer.stargateMinDistance);
 	}
 	
 	@Override
@@ -224,140 +418,143 @@ public class StargateNetwork implements IStargateNetwork{
 	}
 	
 	public static Address parse(String address){
-		try{
-			String[] parts = address.toLowerCase().split(" ");
-			LinkedList<Symbol> symbols = new LinkedList();
-			if(parts.length != 3) throw new Exception("Address too short.");
-			for(String part : parts){
-				for(int p = 0; p < 3; p++){
-					for(int s = 1; s < Symbol.values().length; s++){
-						Symbol sym = Symbol.get(s);
-						String name = sym.toString().toLowerCase();
-						if(part.contentEquals(name)){
-							symbols.addLast(sym);
-							p = 5;
-							break;
-						}else if(part.startsWith(name)){
-							symbols.addLast(sym);
-							part = part.substring(name.length());
-							break;
-						}
-					}
-				}
-			}
-			Symbol[] sym = new Symbol[symbols.size()];
-			for(int i = 0; i < symbols.size(); i++){
-				sym[i] = symbols.get(i);
-			}
-			return Address.create(sym);
-		}catch(Exception e){
-			return null;
+		return AddressParser.parse(address);
+	}
+	
+	/**
+	 * @return The symbol with this name, ignoring case, or null if there's none.
+	 */
+	public static Symbol parseSymbol(String name){
+		if(name == null) return null;
+		for(int s = 1; s < Symbol.values().length; s++){
+			Symbol sym = Symbol.get(s);
+			if(sym.toString().equalsIgnoreCase(name.trim())) return sym;
 		}
+		return null;
 	}
 	
 	public AddressMapping getAddressMapping(Address address) {
-		return addresses.get(address);
+		if(onServerThread()) return address == null ? null : addresses.get(address.pack());
+		return getView().getAddressMapping(address);
 	}
 	
 	@Override
 	public boolean addressExists(Address address){
-		if(isLoaded) return addresses.containsKey(address);
-		else return false;
+		if(onServerThread()) return address != null && addresses.containsKey(address.pack());
+		return getView().addressExists(address);
 	}
 	
 	private Address getRandomAddress(World world){
-		Random random = new Random();
-		Symbol[] symbols;
-		Address address;
 		DimensionPrefix prefix;
-		Integer key = new Integer(world.provider.dimensionId);
-		if(prefixes.containsKey(key)){
-			prefix = prefixes.get(key);
-		}else{
+		int key = world.provider.dimensionId;
+		prefix = prefixes.getPrefix(key);
+		if(prefix == null){
 			prefix = generatePrefixForDimension(key);
+			if(prefix == null) return null;
 		}
-		Symbol[] pfx = prefix.getSymbols();
+		Address address;
 		do{
-			boolean used[] = new boolean[40];
-			used[0] = true;
-			symbols = new Symbol[RANDOM_ADDRESS_LENGTH];
-			for(int i = 0; i < symbols.length; i++){
-				if(i < pfx.length){
-					symbols[i] = pfx[i];
-					used[pfx[i].ordinal()] = true;
-				}else{
-					int s;
-					do{
-						s = random.nextInt(39) + 1;
-					}while(used[s]);
-					symbols[i] = Symbol.values()[s];
-					used[s] = true;
-				}
+			Symbol[] symbols = allocator.nextAddress(prefix.getSymbols());
+			if(symbols == null){
+				StargateLogger.error("There are no addresses left for dimension " + key + "!");
+				return null;
 			}
 			address = Address.create(symbols);
-		}while(address == null || addressExists(address));
+		}while(addresses.containsKey(address.pack()));
 		return address;
 	}
 	
 	@Override
 	public Address getAddressOf(World world, int x, int y, int z){
-		if(isLoaded){
-			Collection<AddressMapping> mappings = addresses.values();
-			for(AddressMapping m : mappings){
-				if(m.getDimension() == world.provider.dimensionId && m.getXCoord() == x && m.getYCoord() == y && m.getZCoord() == z){
-					return m.getAddress();
-				}
-			}
+		if(onServerThread()) return liveAddressOf(world, x, y, z);
+		return getView().getAddressOf(world.provider.dimensionId, x, y, z);
+	}
+	
+	private Address liveAddressOf(World world, int x, int y, int z){
+		GateIndex index = gates.get(world.provider.dimensionId);
+		if(index != null){
+			AddressMapping m = index.get(x, y, z);
+			if(m != null) return m.getAddress();
 		}
 		return null;
 	}
 	
 	public Address getMyAddress(World world, int x, int y, int z){
-		Address address = getAddressOf(world, x, y, z);
+		Address address = liveAddressOf(world, x, y, z);
 		if(address == null){
-			if(dynamicLoadingAddr != null && dynamicLoadingPrefix != null && prefixes.get(world.provider.dimensionId) == null){
-				prefixes.put(world.provider.dimensionId, dynamicLoadingPrefix);
+			if(dynamicLoadingAddr != null && dynamicLoadingPrefix != null && !prefixes.hasPrefix(world.provider.dimensionId)){
+				prefixes.assign(world.provider.dimensionId, dynamicLoadingPrefix);
+				viewPrefixes = true;
+				journal.prefixAdded(world.provider.dimensionId, dynamicLoadingPrefix);
 				address = dynamicLoadingAddr;
 			}else{
 				address = getRandomAddress(world);
+				if(address == null) return null;
 			}
 			AddressMapping mapping = new AddressMapping(address, world.provider.dimensionId, x, y, z);
-			addresses.put(address, mapping);
+			addMapping(mapping);
+			journal.addressAdded(mapping);
 		}
 		return address;
 	}
 	
 	public void freeMyAddress(World world, int x, int y, int z){
-		Address address = getAddressOf(world, x, y, z);
+		Address address = liveAddressOf(world, x, y, z);
 		if(address != null){
-			addresses.remove(address);
+			AddressMapping mapping = addresses.get(address.pack());
+			removeMapping(mapping);
+			journal.addressRemoved(mapping);
+		}
+	}
+	
+	private void addMapping(AddressMapping mapping){
+		AddressMapping old = addresses.put(mapping.getAddress().pack(), mapping);
+		if(old != null){
+			removeFromIndex(old);
+			markChanged(old);
+		}
+		markChanged(mapping);
+		Integer dim = mapping.getDimension();
+		GateIndex index = gates.get(dim);
+		if(index == null){
+			index = new GateIndex();
+			gates.put(dim, index);
+		}
+		index.add(mapping);
+		if(!dialableDirty){
+			dialable.add(mapping.getAddress().pack());
+			if(dialable.isSaturated()) dialableDirty = true;
+		}
+	}
+	
+	private void removeMapping(AddressMapping mapping){
+		addresses.remove(mapping.getAddress().pack());
+		removeFromIndex(mapping);
+		markChanged(mapping);
+		limiter.forget(mapping.getAddress());
+		dialableDirty = true;
+	}
+	
+	private void removeFromIndex(AddressMapping mapping){
+		GateIndex index = gates.get(mapping.getDimension());
+		if(index != null){
+			index.remove(mapping);
 		}
 	}
 	
 	@Override
 	public Address findNearestStargate(World w, int x, int y, int z, int r) {
-		if(!isLoaded) return null;
-		int dim = w.provider.dimensionId;
-		int nearest = r < 0 ? -1 : r*r;
-		Address addr = null;
-		for(AddressMapping map : addresses.values()){
-			if(map.getDimension() == dim){
-				int dx = x - map.getXCoord();
-				int dy = y - map.getYCoord();
-				int dz = z - map.getZCoord();
-				int dst = dx*dx + dy*dy + dz*dz;
-				if (dst < nearest || nearest < 0) {
-					nearest = dst;
-					addr = map.getAddress();
-				}
-			}
+		if(onServerThread()){
+			GateIndex index = gates.get(w.provider.dimensionId);
+			AddressMapping mapping = index == null ? null : index.nearest(x, y, z, r);
+			return mapping == null ? null : mapping.getAddress();
 		}
-		return addr;
+		return getView().findNearestStargate(w.provider.dimensionId, x, y, z, r);
 	}
 	
-	private DimensionPrefix generatePrefixForDimension(Integer key){
+	private DimensionPrefix generatePrefixForDimension(int key){
 		DimensionPrefix prefix;
-		switch(key.intValue()){
+		switch(key){
 			case 0:
 				prefix = new DimensionPrefix(LoreAddresses.OVERWORLD);
 				break;
@@ -365,19 +562,51 @@ public class StargateNetwork implements IStargateNetwork{
 				prefix = new DimensionPrefix(LoreAddresses.NETHER);
 				break;
 			default:
+				DimensionPrefix overworld = new DimensionPrefix(LoreAddresses.OVERWORLD);
+				DimensionPrefix nether = new DimensionPrefix(LoreAddresses.NETHER);
 				do{
-					prefix = DimensionPrefix.generateRandom();
-				}while(prefixes.containsValue(prefix) || reserved.containsKey(prefix));
+					Symbol[] symbols = allocator.nextPrefix();
+					if(symbols == null){
+						StargateLogger.error("There are no dimension prefixes left for dimension " + key + "!");
+						return null;
+					}
+					prefix = new DimensionPrefix(symbols);
+				}while(prefixes.isTaken(prefix.pack()) || prefix.equals(overworld) || prefix.equals(nether));
 		}
-		prefixes.put(key, prefix);
+		prefixes.assign(key, prefix);
+		viewPrefixes = true;
+		journal.prefixAdded(key, prefix);
 		return prefix;
 	}
 	
-	public void initializeWormholes(){
-		if(!isLoaded) return;
-		for(Wormhole wormhole : activeWormholes){
+	/**
+	 * Brings the wormholes read from disk back to life. Their deadlines are kept in world time,
+	 * so the ones that ran out are simply dropped, and only the dimensions that still have
+	 * an open wormhole are loaded.
+	 */
+	private void initializeWormholes(){
+		long now = WormholeScheduler.worldTime();
+		ArrayList<Integer> dims = new ArrayList();
+		Wormhole[] restored = wormholes.getActive().toArray(new Wormhole[0]);
+		for(Wormhole wormhole : restored){
+			wormholes.remove(wormhole);
+			if(wormhole.restore(now)){
+				wormholes.add(wormhole);
+				if(!dims.contains(wormhole.getSourceDimension())) dims.add(wormhole.getSourceDimension());
+				if(!dims.contains(wormhole.getDestinationDimension())) dims.add(wormhole.getDestinationDimension());
+			}else{
+				journal.wormholeClosed(wormhole);
+			}
+		}
+		for(Integer dim : dims){
+			MinecraftServer.getServer().worldServerForDimension(dim.intValue());
+		}
+		for(Wormhole wormhole : wormholes.getActive().toArray(new Wormhole[0])){
 			wormhole.initialize();
 		}
+		if(restored.length > 0){
+			StargateLogger.info("Restored " + wormholes.getActive().size() + " of " + restored.length + " wormholes, loading " + dims.size() + " dimensions.");
+		}
 	}
 	
 	private void readFromFile(){
@@ -385,6 +614,7 @@ public class StargateNetwork implements IStargateNetwork{
 			File wormholeFile = Helper.getSaveFile("wormholes.dat");
 			File addressFile = Helper.getSaveFile("addresses.dat");
 			File prefixFile = Helper.getSaveFile("prefixes.dat");
+			NetworkPersistence.recover(Helper.getSaveFile("network.commit"));
 			boolean hasWormhole = wormholeFile.exists();
 			boolean hasAddress = addressFile.exists();
 			boolean hasPrefix = prefixFile.exists();
@@ -392,15 +622,14 @@ public class StargateNetwork implements IStargateNetwork{
 				readWormholes(wormholeFile);
 				readAddresses(addressFile);
 				readPrefixes(prefixFile);
+				readAllocator(Helper.getSaveFile("allocator.dat"));
+				readJournal(Helper.getSaveFile("network.journal"), Helper.getSaveFile("network.gen"));
 			}else if(hasWormhole || hasAddress || hasPrefix){
 				StargateLogger.error("Some Stargate Network data files are missing. This may be a very serious problem!");
 				FMLCommonHandler.instance().raiseException(new Exception("StargateTech2 detected save corruption!"), "StargateTech2 detected save corruption!", false);
 			}else{
 				StargateLogger.warning("All Stargate Network data files are missing. This is normal when saves are first created.");
 				StargateLogger.info("Creating new Wormhole, Address and Prefix files for the Stargate Network.");
-				wormholeFile.createNewFile();
-				addressFile.createNewFile();
-				prefixFile.createNewFile();
 			}
 		}catch(Exception e){
 			StargateLogger.error("There was an error while trying to read Stargate Network files");
@@ -408,6 +637,89 @@ public class StargateNetwork implements IStargateNetwork{
 		}
 	}
 	
+	private void readAllocator(File allocatorFile) throws Exception{
+		if(!allocatorFile.exists()){
+			StargateLogger.info("Creating a new address allocator for the Stargate Network.");
+			return;
+		}
+		DataInputStream dis = new DataInputStream(new FileInputStream(allocatorFile));
+		try{
+			allocator = AddressAllocator.readFromStream(dis);
+		}finally{
+			dis.close();
+		}
+	}
+	
+	private void readJournal(File journalFile, File generationFile) throws Exception{
+		if(generationFile.exists()){
+			DataInputStream dis = new DataInputStream(new FileInputStream(generationFile));
+			try{
+				generation = dis.readLong();
+			}finally{
+				dis.close();
+			}
+		}
+		int records = 0;
+		for(byte[] frame : NetworkJournal.read(journalFile, generation)){
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(frame));
+			while(dis.available() > 0){
+				replay(dis.readByte(), dis);
+				records++;
+			}
+		}
+		if(records > 0){
+			StargateLogger.info("Replayed " + records + " Stargate Network journal records.");
+		}
+	}
+	
+	private void replay(byte type, DataInputStream dis) throws Exception{
+		switch(type){
+			case NetworkJournal.ADDRESS_ADDED:{
+				Address address = Address.unpack(dis.readLong());
+				addMapping(new AddressMapping(address, dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt()));
+				break;
+			}
+			case NetworkJournal.ADDRESS_REMOVED:{
+				AddressMapping mapping = addresses.get(dis.readLong());
+				if(mapping != null) removeMapping(mapping);
+				break;
+			}
+			case NetworkJournal.PREFIX_ADDED:{
+				int d = dis.readInt();
+				Symbol[] symbols = new Symbol[]{
+					Symbol.get(dis.readByte()),
+					Symbol.get(dis.readByte()),
+					Symbol.get(dis.readByte())
+				};
+				prefixes.assign(d, new DimensionPrefix(symbols));
+				break;
+			}
+			case NetworkJournal.WORMHOLE_OPENED:{
+				// Replaces any wormhole from the same gate, so replaying a record twice does no harm.
+				Wormhole opened = Wormhole.readFromStream(dis);
+				for(Wormhole wormhole : wormholes.getActive()){
+					if(opened.hasSameSource(wormhole)){
+						wormholes.remove(wormhole);
+						break;
+					}
+				}
+				wormholes.add(opened);
+				break;
+			}
+			case NetworkJournal.WORMHOLE_CLOSED:{
+				int w = dis.readInt(), x = dis.readInt(), y = dis.readInt(), z = dis.readInt();
+				for(Wormhole wormhole : wormholes.getActive()){
+					if(wormhole.isSourceAt(w, x, y, z)){
+						wormholes.remove(wormhole);
+						break;
+					}
+				}
+				break;
+			}
+			default: throw new Exception("Unknown Stargate Network journal record: " + type);
+		}
+	}
+	
 	private void readWormholes(File wormholeFile) throws Exception{
 		FileInputStream fis = null;
 		DataInputStream dis = null;
@@ -416,7 +728,7 @@ public class StargateNetwork implements IStargateNetwork{
 			dis = new DataInputStream(fis);
 			int count = dis.readInt();
 			for(int i = 0; i < count; i++){
-				activeWormholes.add(Wormhole.readFromStream(dis));
+				wormholes.add(Wormhole.readFromStream(dis));
 			}
 			dis.close();
 		}catch(Exception e){
@@ -427,45 +739,14 @@ public class StargateNetwork implements IStargateNetwork{
 	}
 	
 	private void readAddresses(File addressFile) throws Exception{
-		FileInputStream fis = null;
-		DataInputStream dis = null;
-		try{
-			fis = new FileInputStream(addressFile);
-			dis = new DataInputStream(fis);
-			int count = dis.readInt();
-			for(int i = 0; i < count; i++){
-				AddressMapping address = AddressMapping.readFromStream(dis);
-				addresses.put(address.getAddress(), address);
-			}
-			dis.close();
-		}catch(Exception e){
-			try{ dis.close(); }
-			catch(Exception ignored){}
-			throw e;
+		for(AddressMapping address : NetworkFormat.readAddresses(addressFile)){
+			addMapping(address);
 		}
 	}
 	
 	private void readPrefixes(File prefixFile) throws Exception{
-		FileInputStream fis = null;
-		DataInputStream dis = null;
-		try{
-			fis = new FileInputStream(prefixFile);
-			dis = new DataInputStream(fis);
-			int count = dis.readInt();
-			for(int i = 0; i < count; i++){
-				int d = dis.readInt();
-				Symbol[] symbols = new Symbol[]{
-					Symbol.get(dis.readInt()),
-					Symbol.get(dis.readInt()),
-					Symbol.get(dis.readInt())
-				};
-				prefixes.put(new Integer(d), new DimensionPrefix(symbols));
-			}
-			dis.close();
-		}catch(Exception e){
-			try{ dis.close(); }
-			catch(Exception ignored){}
-			throw e;
+		for(Map.Entry<Integer, DimensionPrefix> entry : NetworkFormat.readPrefixes(prefixFile).entrySet()){
+			prefixes.assign(entry.getKey().intValue(), entry.getValue());
 		}
 	}
 	
@@ -474,85 +755,55 @@ public class StargateNetwork implements IStargateNetwork{
 			File wormholeFile = Helper.getSaveFile("wormholes.dat");
 			File addressFile = Helper.getSaveFile("addresses.dat");
 			File prefixFile = Helper.getSaveFile("prefixes.dat");
-			if(!wormholeFile.exists()){
-				StargateLogger.warning("Stargate Network Wormhole file is missing. A new one is being created.");
-				wormholeFile.createNewFile();
-			}
-			if(!addressFile.exists()){
-				StargateLogger.warning("Stargate Network Address file is missing. A new one is being created.");
-				addressFile.createNewFile();
-			}
-			if(!prefixFile.exists()){
-				StargateLogger.warning("Stargate Network Prefix file is missing. A new one is being created.");
-				prefixFile.createNewFile();
-			}
-			writeWormholes(wormholeFile);
-			writeAddresses(addressFile);
-			writePrefixes(prefixFile);
+			File journalFile = Helper.getSaveFile("network.journal");
+			File generationFile = Helper.getSaveFile("network.gen");
+			File allocatorFile = Helper.getSaveFile("allocator.dat");
+			File commitFile = Helper.getSaveFile("network.commit");
+			// The generation only moves on, and the journal is only forgotten, once the snapshot is on disk.
+			byte[] frame = journal.hasPendingRecords() ? journal.takeBatch() : null;
+			snapshot = new NetworkPersistence.Snapshot(wormholeFile, addressFile, prefixFile, journalFile, generationFile, allocatorFile, commitFile,
+					generation + 1, snapshotWormholes(), snapshotAddresses(), snapshotDimensions(), snapshotPrefixes(), allocator.toBytes(), frame);
+			persistence.submit(snapshot);
 		}catch(Exception e){
-			StargateLogger.error("There was an error while trying to write Stargate Network files");
+			StargateLogger.error("There was an error while trying to snapshot the Stargate Network");
 			e.printStackTrace();
 		}
 	}
 	
-	private void writeWormholes(File wormholeFile) throws Exception{
-		FileOutputStream fos = null;
-		DataOutputStream dos = null;
+	private void writeJournal(){
 		try{
-			fos = new FileOutputStream(wormholeFile, false);
-			dos = new DataOutputStream(fos);
-			dos.writeInt(activeWormholes.size());
-			for(Wormhole wormhole : activeWormholes){
-				wormhole.writeToStream(dos);
-			}
-			dos.close();
+			persistence.append(Helper.getSaveFile("network.journal"), journal.takeBatch());
 		}catch(Exception e){
-			try{ dos.close(); }
-			catch(Exception ignored){}
-			throw e;
+			StargateLogger.error("There was an error while trying to write the Stargate Network journal");
+			e.printStackTrace();
 		}
 	}
 	
-	private void writeAddresses(File addressFile) throws Exception{
-		FileOutputStream fos = null;
-		DataOutputStream dos = null;
-		try{
-			fos = new FileOutputStream(addressFile, false);
-			dos = new DataOutputStream(fos);
-			Collection<AddressMapping> values = addresses.values();
-			dos.writeInt(values.size());
-			for(AddressMapping address : values){
-				address.writeToStream(dos);
-			}
-			dos.close();
-		}catch(Exception e){
-			try{ dos.close(); }
-			catch(Exception ignored){}
-			throw e;
+	// Wormholes point at live tile entities, so they have to be serialized on the server thread.
+	private byte[] snapshotWormholes() throws Exception{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		dos.writeInt(wormholes.getActive().size());
+		for(Wormhole wormhole : wormholes.getActive()){
+			wormhole.writeToStream(dos);
 		}
+		dos.close();
+		return bytes.toByteArray();
 	}
 	
-	private void writePrefixes(File prefixFile) throws Exception{
-		FileOutputStream fos = null;
-		DataOutputStream dos = null;
-		try{
-			fos = new FileOutputStream(prefixFile, false);
-			dos = new DataOutputStream(fos);
-			Set<Integer> keys = prefixes.keySet();
-			dos.writeInt(keys.size());
-			for(Integer key : keys){
-				DimensionPrefix prefix = prefixes.get(key);
-				Symbol[] symbols = prefix.getSymbols();
-				dos.writeInt(key.intValue());
-				for(Symbol s : symbols){
-					dos.writeInt(s.ordinal());
-				}
-			}
-			dos.close();
-		}catch(Exception e){
-			try{ dos.close(); }
-			catch(Exception ignored){}
-			throw e;
-		}
+	private AddressMapping[] snapshotAddresses(){
+		return addresses.values().toArray(new AddressMapping[addresses.size()]);
+	}
+	
+	private int[] snapshotDimensions(){
+		int[] dims = new int[prefixes.dimensionCount()];
+		prefixes.getAssignments(dims, new DimensionPrefix[dims.length]);
+		return dims;
+	}
+	
+	private DimensionPrefix[] snapshotPrefixes(){
+		DimensionPrefix[] pfxs = new DimensionPrefix[prefixes.dimensionCount()];
+		prefixes.getAssignments(new int[pfxs.length], pfxs);
+		return pfxs;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import lordfokas.stargatetech2.util.StargateLogger;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityList;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
+
+/**
+ * Entities that went into a wormhole and haven't come out yet.
+ *
+ * Each entity is saved to NBT and written to a fixed size direct buffer, then removed
+ * from the source world. They are spawned at the destination a few at a time, and only
+ * once the destination chunk is loaded, so nothing ever waits on a chunk load.
+ * When the buffer is full entities are simply not taken in, and stay at the horizon
+ * until there is room for them.
+ *
+ * Players can't be stored like this, and neither can entities riding something,
+ * those go through the {@link lordfokas.stargatetech2.modules.transport.TeleportQueue}.
+ */
+public class TransitBuffer {
+	private static final int HEADER = 4;
+	
+	private final ByteBuffer buffer;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+	private int read = 0;
+	private int count = 0;
+	
+	public TransitBuffer(int capacity){
+		buffer = ByteBuffer.allocateDirect(capacity);
+	}
+	
+	/**
+	 * @return Whether this entity can travel in a transit buffer at all.
+	 */
+	public static boolean canStore(Entity entity){
+		return !(entity instanceof EntityPlayer) && entity.ridingEntity == null && entity.riddenByEntity == null;
+	}
+	
+	/**
+	 * Saves the entity into the buffer and removes it from its world.
+	 *
+	 * @return false if there's no room for it, or it can't be saved, and was left untouched.
+	 */
+	public boolean offer(Entity entity){
+		NBTTagCompound nbt = new NBTTagCompound();
+		if(!entity.writeToNBTOptional(nbt)) return false;
+		bytes.reset();
+		try{
+			CompressedStreamTools.write(nbt, new DataOutputStream(bytes));
+		}catch(Exception e){
+			StargateLogger.warning("Could not save a " + EntityList.getEntityString(entity) + " to send it through a wormhole.");
+			return false;
+		}
+		int size = bytes.size();
+		if(buffer.remaining() < HEADER + size){
+			compact();
+			if(buffer.remaining() < HEADER + size) return false;
+		}
+		buffer.putInt(size);
+		buffer.put(bytes.toByteArray());
+		count++;
+		entity.setDead();
+		return true;
+	}
+	
+	/**
+	 * Spawns up to max buffered entities in the world, facing yaw, centered on the block at x, y, z.
+	 * The destination chunk must already be loaded.
+	 *
+	 * @return How many entities were taken out of the buffer.
+	 */
+	public int materialize(World world, int x, int y, int z, float yaw, int max){
+		int taken = 0;
+		while(taken < max && count > 0){
+			int size = buffer.getInt(read);
+			byte[] data = new byte[size];
+			ByteBuffer view = buffer.duplicate();
+			view.position(read + HEADER);
+			view.get(data);
+			read += HEADER + size;
+			count--;
+			taken++;
+			if(count == 0){
+				buffer.clear();
+				read = 0;
+			}
+			spawn(world, data, x, y, z, yaw);
+		}
+		return taken;
+	}
+	
+	private void spawn(World world, byte[] data, int x, int y, int z, float yaw){
+		NBTTagCompound nbt = null;
+		Entity entity = null;
+		try{
+			nbt = CompressedStreamTools.read(new DataInputStream(new ByteArrayInputStream(data)));
+			entity = EntityList.createEntityFromNBT(nbt, world);
+		}catch(Exception e){
+			e.printStackTrace();
+		}
+		if(entity == null){
+			String type = nbt == null ? "unreadable entity" : nbt.getString("id");
+			StargateLogger.warning("Lost a " + type + " in a wormhole: it could not be recreated in dimension " + world.provider.dimensionId + " at " + x + ", " + y + ", " + z);
+			return;
+		}
+		entity.dimension = world.provider.dimensionId;
+		entity.setLocationAndAngles(x + 0.5D, y, z + 0.5D, yaw, entity.rotationPitch);
+		world.spawnEntityInWorld(entity);
+	}
+	
+	public boolean isEmpty(){
+		return count == 0;
+	}
+	
+	public int size(){
+		return count;
+	}
+	
+	private void compact(){
+		if(read == 0) return;
+		buffer.limit(buffer.position());
+		buffer.position(read);
+		buffer.compact();
+		read = 0;
+	}
+}
@@ -2,26 +2,32 @@ package lordfokas.stargatetech2.modules.transport.stargates;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 import lordfokas.stargatetech2.ZZ_THRASH.Vec3Int_THRASH;
 import lordfokas.stargatetech2.ZZ_THRASH.Vec4Int_THRASH;
 import lordfokas.stargatetech2.api.stargate.Address;
-import lordfokas.stargatetech2.modules.transport.Teleporter;
+import lordfokas.stargatetech2.modules.transport.TeleportQueue;
 import lordfokas.stargatetech2.modules.transport.TileStargate;
 import lordfokas.stargatetech2.util.ChunkLoader;
+import lordfokas.stargatetech2.util.ConfigServer;
 import lordfokas.stargatetech2.util.StargateLogger;
 import net.minecraft.entity.Entity;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.util.AxisAlignedBB;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 
-public final class Wormhole {
+public final class Wormhole implements ChunkLoader.ILeaseHolder{
 	private Vec4Int_THRASH tmpSrc, tmpDst;
 	private TileStargate source, destination;
 	private boolean isWormholeActive = true;
 	private long lastWormholeTime = 0;
-	private long countdown, src, dst;
+	private long countdown, deadline, src, dst;
+	private EventHorizon horizon;
+	private Vec3Int_THRASH exit;
+	private float exitYaw;
+	private TransitBuffer transit;
 	
 	private Wormhole(){}
 	
@@ -31,29 +37,77 @@ public final class Wormhole {
 		this.destination = destination;
 		this.src = srcChunks;
 		this.dst = dstChunks;
-		lastWormholeTime = source.getWorldObj().getTotalWorldTime();
+		lastWormholeTime = WormholeScheduler.worldTime();
+		ChunkLoader.setHolder(src, this);
+		ChunkLoader.setHolder(dst, this);
 		source.setWormhole(this, true, true);
 		destination.setWormhole(this, false, true);
 	}
 	
-	public void update(){
-		countdown -= (source.getWorldObj().getTotalWorldTime() - lastWormholeTime);
-		lastWormholeTime = source.getWorldObj().getTotalWorldTime();
-		doTeleport();
-		if(countdown <= 0){
-			disconnect();
+	/**
+	 * Called every tick by the {@link WormholeScheduler} while this wormhole is open.
+	 */
+	void tick(){
+		if(source != null && destination != null){
+			doTeleport();
 		}
 	}
 	
+	void setDeadline(long deadline){
+		this.deadline = deadline;
+		this.countdown = deadline - WormholeScheduler.worldTime();
+	}
+	
+	long getDeadline(){
+		return deadline;
+	}
+	
+	/**
+	 * @return How many ticks this wormhole has left, as of the last time it was scheduled or saved.
+	 */
+	long getRemainingTicks(){
+		return countdown;
+	}
+	
+	/**
+	 * Works out how much time a wormhole read from disk has left, against world time.
+	 * If it ran out, its chunks are let go.
+	 *
+	 * @return Whether the wormhole is still open.
+	 */
+	boolean restore(long now){
+		countdown = lastWormholeTime + countdown - now;
+		if(countdown > 0) return true;
+		isWormholeActive = false;
+		ChunkLoader.release(src);
+		ChunkLoader.release(dst);
+		return false;
+	}
+	
+	int getSourceDimension(){
+		return source != null ? source.getWorldObj().provider.dimensionId : tmpSrc.w;
+	}
+	
+	int getDestinationDimension(){
+		return destination != null ? destination.getWorldObj().provider.dimensionId : tmpDst.w;
+	}
+	
 	public void disconnect(){
 		isWormholeActive = false;
-		source.onDisconnect();
-		destination.onDisconnect();
+		flushTransit();
+		if(source != null) source.onDisconnect();
+		if(destination != null) destination.onDisconnect();
 		StargateNetwork.instance().removeWormhole(this);
 		ChunkLoader.release(src);
 		ChunkLoader.release(dst);
 	}
 	
+	@Override
+	public void onLeaseEvicted(long lease){
+		// Without its chunks this wormhole can't work reliably, so it closes early.
+		if(isWormholeActive) disconnect();
+	}
+	
 	public boolean isActive(){
 		return isWormholeActive;
 	}
@@ -67,35 +121,102 @@ public final class Wormhole {
 	}
 	
 	private void doTeleport(){
-		AxisAlignedBB aabb;
-		if(source.isX()){
-			aabb = AxisAlignedBB.getBoundingBox(source.xCoord-1, source.yCoord+1, source.zCoord+0.375, source.xCoord+2, source.yCoord+4, source.zCoord+0.625);
-		}else{
-			aabb = AxisAlignedBB.getBoundingBox(source.xCoord+0.375, source.yCoord+1, source.zCoord-1, source.xCoord+0.625, source.yCoord+4, source.zCoord+2);
+		if(horizon == null){
+			horizon = new EventHorizon(source);
+			exit = new Vec3Int_THRASH(destination.xCoord, destination.yCoord+1, destination.zCoord);
+			exitYaw = (90 * destination.getBlockMetadata());
 		}
-		Vec3Int_THRASH position = new Vec3Int_THRASH(destination.xCoord, destination.yCoord+1, destination.zCoord);
-		float yaw = (90 * destination.getBlockMetadata());
-		List<Entity> entities = source.getWorldObj().getEntitiesWithinAABB(Entity.class, aabb);
-		for(Entity entity : entities){
-			if(entity.riddenByEntity == null){
-				Teleporter.teleport(source.getWorldObj(), entity, destination.getWorldObj(), position, yaw);
+		List<Entity> entities = horizon.capture();
+		if(!entities.isEmpty()){
+			ChunkLoader.touch(src);
+			ChunkLoader.touch(dst);
+		}
+		for(int i = 0; i < entities.size(); i++){
+			Entity entity = entities.get(i);
+			if(TransitBuffer.canStore(entity)){
+				if(transit == null) transit = new TransitBuffer(ConfigServer.transitBufferKB * 1024);
+				if(transit.offer(entity)) continue;
+				if(!transit.isEmpty()) continue; // full, it stays at the horizon until there's room.
+			}
+			TeleportQueue.enqueue(source.getWorldObj(), entity, destination.getWorldObj(), exit, exitYaw);
+		}
+		if(transit != null && !transit.isEmpty()){
+			WorldServer world = (WorldServer) destination.getWorldObj();
+			int cx = exit.x >> 4, cz = exit.z >> 4;
+			if(world.theChunkProviderServer.chunkExists(cx, cz)){
+				transit.materialize(world, exit.x, exit.y, exit.z, exitYaw, ConfigServer.teleportsPerTick);
+			}else{
+				world.theChunkProviderServer.loadChunk(cx, cz, TeleportQueue.ASYNC);
 			}
 		}
 	}
 	
+	/**
+	 * Lets out everything still in transit. This is the wormhole's last chance to deliver
+	 * them, so it will wait for the destination chunk if it has to.
+	 */
+	void flushTransit(){
+		if(transit == null || transit.isEmpty()) return;
+		if(destination == null){
+			StargateLogger.warning("Lost " + transit.size() + " entities in a wormhole with no destination.");
+		}else{
+			WorldServer world = (WorldServer) destination.getWorldObj();
+			world.theChunkProviderServer.loadChunk(exit.x >> 4, exit.z >> 4);
+			transit.materialize(world, exit.x, exit.y, exit.z, exitYaw, transit.size());
+		}
+		transit = null;
+	}
+	
 	public void writeToStream(DataOutputStream dos) throws Exception{
+		lastWormholeTime = WormholeScheduler.worldTime();
+		if(deadline > 0) countdown = Math.max(0, deadline - lastWormholeTime);
 		dos.writeLong(countdown);
 		dos.writeLong(lastWormholeTime);
 		dos.writeLong(dst);
 		dos.writeLong(src);
-		dos.writeInt(source.getWorldObj().provider.dimensionId);
-		dos.writeInt(source.xCoord);
-		dos.writeInt(source.yCoord);
-		dos.writeInt(source.zCoord);
-		dos.writeInt(destination.getWorldObj().provider.dimensionId);
-		dos.writeInt(destination.xCoord);
-		dos.writeInt(destination.yCoord);
-		dos.writeInt(destination.zCoord);
+		writeSourceToStream(dos);
+		if(destination != null){
+			dos.writeInt(destination.getWorldObj().provider.dimensionId);
+			dos.writeInt(destination.xCoord);
+			dos.writeInt(destination.yCoord);
+			dos.writeInt(destination.zCoord);
+		}else{
+			dos.writeInt(tmpDst.w);
+			dos.writeInt(tmpDst.x);
+			dos.writeInt(tmpDst.y);
+			dos.writeInt(tmpDst.z);
+		}
+	}
+	
+	/**
+	 * Writes the location of the source gate, which identifies this wormhole.
+	 */
+	public void writeSourceToStream(DataOutputStream dos) throws IOException{
+		if(source != null){
+			dos.writeInt(source.getWorldObj().provider.dimensionId);
+			dos.writeInt(source.xCoord);
+			dos.writeInt(source.yCoord);
+			dos.writeInt(source.zCoord);
+		}else{
+			dos.writeInt(tmpSrc.w);
+			dos.writeInt(tmpSrc.x);
+			dos.writeInt(tmpSrc.y);
+			dos.writeInt(tmpSrc.z);
+		}
+	}
+	
+	public boolean isSourceAt(int w, int x, int y, int z){
+		if(source != null){
+			return source.getWorldObj().provider.dimensionId == w && source.xCoord == x && source.yCoord == y && source.zCoord == z;
+		}
+		return tmpSrc != null && tmpSrc.w == w && tmpSrc.x == x && tmpSrc.y == y && tmpSrc.z == z;
+	}
+	
+	/**
+	 * @return Whether the other wormhole comes out of the same gate as this one, which has to have been read from disk.
+	 */
+	boolean hasSameSource(Wormhole other){
+		return other.isSourceAt(tmpSrc.w, tmpSrc.x, tmpSrc.y, tmpSrc.z);
 	}
 	
 	public static Wormhole readFromStream(DataInputStream dis) throws Exception{
@@ -128,6 +249,8 @@ public final class Wormhole {
 			w = MinecraftServer.getServer().worldServerForDimension(tmpDst.w);
 			s = (TileStargate) w.getTileEntity(tmpDst.x, tmpDst.y, tmpDst.z);
 			destination = s;
+			ChunkLoader.setHolder(src, this);
+			ChunkLoader.setHolder(dst, this);
 			source.setWormhole(this, true, false);
 			destination.setWormhole(this, false, false);
 		}catch(Exception e){
@@ -0,0 +1,139 @@
+package lordfokas.stargatetech2.modules.transport.stargates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lordfokas.stargatetech2.modules.transport.TeleportQueue;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.DimensionManager;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+/**
+ * Owns every active wormhole and drives them from the server tick,
+ * so Stargates don't need to tick and wormholes close on time even if
+ * the source gate's chunk stops being ticked.
+ *
+ * Expiry uses a hashed timer wheel keyed on overworld time: each wormhole sits in
+ * the slot of its deadline, and each tick only looks at the slot for that tick.
+ * A wormhole only ever lasts 38 seconds, so with 1024 slots an entry is never
+ * looked at before its deadline comes up.
+ */
+public class WormholeScheduler {
+	private static final int WHEEL_BITS = 10;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	
+	private final ArrayList<Wormhole> active = new ArrayList();
+	private final ArrayList<Wormhole>[] wheel = new ArrayList[WHEEL_SIZE];
+	private final ArrayList<Wormhole> expired = new ArrayList();
+	private final ArrayList<Wormhole> pending = new ArrayList();
+	private long lastTime = -1;
+	
+	/**
+	 * @return The time all wormhole deadlines are measured against.
+	 */
+	public static long worldTime(){
+		WorldServer overworld = overworld();
+		return overworld == null ? 0 : overworld.getTotalWorldTime();
+	}
+	
+	private static WorldServer overworld(){
+		return DimensionManager.getWorld(0);
+	}
+	
+	/**
+	 * Adds a wormhole with its remaining ticks. Wormholes read from disk before the
+	 * worlds are loaded are only scheduled on the first tick, so they don't expire early.
+	 */
+	public void add(Wormhole wormhole){
+		active.add(wormhole);
+		if(overworld() == null){
+			pending.add(wormhole);
+		}else{
+			schedule(wormhole);
+		}
+	}
+	
+	private void schedule(Wormhole wormhole){
+		long deadline = worldTime() + Math.max(1, wormhole.getRemainingTicks());
+		wormhole.setDeadline(deadline);
+		slot(deadline).add(wormhole);
+	}
+	
+	public boolean remove(Wormhole wormhole){
+		if(!active.remove(wormhole)) return false;
+		if(!pending.remove(wormhole)){
+			ArrayList<Wormhole> slot = wheel[(int)(wormhole.getDeadline() & WHEEL_MASK)];
+			if(slot != null) slot.remove(wormhole);
+		}
+		return true;
+	}
+	
+	/**
+	 * @return A live view of every active wormhole. Do not modify.
+	 */
+	public List<Wormhole> getActive(){
+		return active;
+	}
+	
+	/**
+	 * Delivers every entity still inside a wormhole, so none are lost when the server stops.
+	 */
+	public void flushTransit(){
+		for(int i = 0; i < active.size(); i++){
+			active.get(i).flushTransit();
+		}
+	}
+	
+	public void clear(){
+		active.clear();
+		pending.clear();
+		for(int i = 0; i < WHEEL_SIZE; i++){
+			wheel[i] = null;
+		}
+		lastTime = -1;
+	}
+	
+	private ArrayList<Wormhole> slot(long time){
+		int index = (int)(time & WHEEL_MASK);
+		if(wheel[index] == null) wheel[index] = new ArrayList(2);
+		return wheel[index];
+	}
+	
+	@SubscribeEvent
+	public void onServerTick(TickEvent.ServerTickEvent event){
+		if(event.phase != TickEvent.Phase.END) return;
+		if(active.isEmpty()){
+			TeleportQueue.flush(); // entities still queued from wormholes that closed.
+			return;
+		}
+		for(int i = 0; i < pending.size(); i++){
+			schedule(pending.get(i));
+		}
+		pending.clear();
+		long now = worldTime();
+		expire(now);
+		// Walk backwards, teleporting can destroy gates and close wormholes.
+		for(int i = active.size() - 1; i >= 0; i--){
+			if(i < active.size()) active.get(i).tick();
+		}
+		TeleportQueue.flush();
+	}
+	
+	private void expire(long now){
+		long from = lastTime < 0 || now - lastTime > WHEEL_SIZE ? now - WHEEL_SIZE + 1 : lastTime + 1;
+		lastTime = now;
+		for(long time = from; time <= now; time++){
+			ArrayList<Wormhole> slot = wheel[(int)(time & WHEEL_MASK)];
+			if(slot == null) continue;
+			for(int i = 0; i < slot.size(); i++){
+				if(slot.get(i).getDeadline() <= now) expired.add(slot.get(i));
+			}
+		}
+		for(int i = 0; i < expired.size(); i++){
+			expired.get(i).disconnect();
+		}
+		expired.clear();
+	}
+}
@@ -0,0 +1,68 @@
+package lordfokas.stargatetech2.util;
+
+/**
+ * Bloom filter over primitive long keys.
+ * Answers "definitely not present" or "maybe present", never giving false negatives.
+ *
+ * Elements can't be removed, so owners must rebuild the filter after removals.
+ */
+public class BloomFilter {
+	private static final int BITS_PER_ELEMENT = 10;
+	private static final int HASHES = 7; // optimal for 10 bits per element, ~1% false positives.
+	
+	private final long[] bits;
+	private final int mask;
+	private final int capacity;
+	private int size;
+	
+	/**
+	 * @param expected How many elements the filter should hold before its error rate degrades.
+	 */
+	public BloomFilter(int expected){
+		int length = 64;
+		while(length < expected * BITS_PER_ELEMENT){
+			length <<= 1;
+		}
+		bits = new long[length >> 6];
+		mask = length - 1;
+		capacity = expected;
+	}
+	
+	private static long mix(long key){
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		return key;
+	}
+	
+	public void add(long key){
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for(int i = 0; i < HASHES; i++){
+			int bit = (h1 + i * h2) & mask;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+		size++;
+	}
+	
+	public boolean mightContain(long key){
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for(int i = 0; i < HASHES; i++){
+			int bit = (h1 + i * h2) & mask;
+			if((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return Whether more elements were added than the filter was sized for.
+	 */
+	public boolean isSaturated(){
+		return size > capacity;
+	}
+}
@@ -1,5 +1,9 @@
 package lordfokas.stargatetech2.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class ByteUtil {
 	public static int readInt(byte[] array, int pointer){
 		byte b0, b1, b2, b3;
@@ -16,4 +20,37 @@ public class ByteUtil {
 		array[pointer + 2] = (byte)((value & 0x0000FF00) >> 8 );
 		array[pointer + 3] = (byte) (value & 0x000000FF);
 	}
+	
+	/**
+	 * Writes an unsigned LEB128 variable length integer (7 bits per byte, low bits first).
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException{
+		while((value & ~0x7FL) != 0){
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+	
+	public static long readVarLong(DataInput in) throws IOException{
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7){
+			byte b = in.readByte();
+			value |= ((long)(b & 0x7F)) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed variable length integer.");
+	}
+	
+	/**
+	 * Writes a signed int using zig-zag encoding, so small negative values stay short.
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException{
+		writeVarLong(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+	}
+	
+	public static int readVarInt(DataInput in) throws IOException{
+		int value = (int) readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
 }
\ No newline at end of file
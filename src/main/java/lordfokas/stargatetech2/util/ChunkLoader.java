@@ -9,26 +9,95 @@ import java.util.ArrayList;
 import java.util.List;
 
 import lordfokas.stargatetech2.StargateTech2;
-import lordfokas.stargatetech2.modules.transport.stargates.StargateNetwork;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraftforge.common.ForgeChunkManager;
 import net.minecraftforge.common.ForgeChunkManager.LoadingCallback;
 import net.minecraftforge.common.ForgeChunkManager.Ticket;
 import net.minecraftforge.common.ForgeChunkManager.Type;
+import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
-import net.minecraftforge.fml.server.FMLServerHandler;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 
+/**
+ * Keeps chunks loaded on behalf of whoever asks, through leases.
+ *
+ * A lease is a set of chunks in one dimension, identified by a long id. Chunks are reference
+ * counted, so overlapping leases (two gates close to each other) share the same forced chunk,
+ * and each ticket is filled up to Forge's chunk limit before another one is requested.
+ * A ticket only stores its chunks, as an int array of x, z pairs; the leases themselves are
+ * saved to chunks.dat so their ids stay valid across restarts.
+ *
+ * The number of forced chunks can be capped per dimension and in total, though neither is
+ * by default. When a new lease would go over either budget, expired leases and then the
+ * least recently used idle ones are evicted to make room, and their holders are told so
+ * they can shut down.
+ * Leases can also carry a time to live, after which they are released on their own.
+ */
 public final class ChunkLoader implements LoadingCallback{
 	public static final ChunkLoader instance = new ChunkLoader();
+	private static final String KEY_CHUNKS = "leased";
+	private static final int MIN_IDLE_TICKS = 100;
+	private static final int SWEEP_INTERVAL = 20;
 	
-	private ArrayList<Integer> dims;
-	private ArrayList<Ticket> tickets;
-	private long ticketID = 0;
+	/** Returned instead of a lease id when Forge has no tickets left for us. */
+	public static final long NO_TICKET = -1L;
+	/** Returned instead of a lease id when the chunk budget is used up and nothing can be evicted. */
+	public static final long OVER_BUDGET = -2L;
+	
+	/**
+	 * Told when one of its leases is taken away to make room for another.
+	 */
+	public interface ILeaseHolder{
+		public void onLeaseEvicted(long lease);
+	}
+	
+	private static final class Lease{
+		final long id;
+		final int dimension;
+		final long[] chunks;
+		final long expires;
+		long lastUsed;
+		ILeaseHolder holder;
+		
+		Lease(long id, int dimension, long[] chunks, long expires){
+			this.id = id;
+			this.dimension = dimension;
+			this.chunks = chunks;
+			this.expires = expires;
+			this.lastUsed = now();
+		}
+		
+		boolean hasExpired(long now){
+			return expires > 0 && now >= expires;
+		}
+	}
+	
+	private static final class ForcedChunk{
+		final ChunkPos pos;
+		int refs;
+		Ticket ticket;
+		
+		ForcedChunk(ChunkPos pos){
+			this.pos = pos;
+		}
+	}
+	
+	/** Every forced chunk and every ticket of one dimension. */
+	private static final class Dimension{
+		final LongObjectMap<ForcedChunk> chunks = new LongObjectMap();
+		final ArrayList<Ticket> tickets = new ArrayList();
+	}
+	
+	private LongObjectMap<Lease> leases = new LongObjectMap();
+	private LongObjectMap<Dimension> dimensions = new LongObjectMap();
+	private long leaseID = 0;
+	private int forcedTotal = 0;
+	private boolean ready = false;
+	private ArrayList<Ticket> early = new ArrayList();
 	
 	private ChunkLoader(){}
 	
@@ -36,9 +105,32 @@ public final class ChunkLoader implements LoadingCallback{
 		ForgeChunkManager.setForcedChunkLoadingCallback(StargateTech2.instance, instance);
 	}
 	
+	private static long now(){
+		World overworld = DimensionManager.getWorld(0);
+		return overworld == null ? 0 : overworld.getTotalWorldTime();
+	}
+	
+	private static long key(int x, int z){
+		return (((long) x) << 32) | (z & 0xFFFFFFFFL);
+	}
+	
+	private Dimension dimension(int dim){
+		Dimension dimension = dimensions.get(dim);
+		if(dimension == null){
+			dimension = new Dimension();
+			dimensions.put(dim, dimension);
+		}
+		return dimension;
+	}
+	
+	// ##################################################################
+	// Server lifecycle
+	
 	public static void load(){
-		instance.tickets = new ArrayList();
-		instance.dims = new ArrayList();
+		instance.leases = new LongObjectMap();
+		instance.dimensions = new LongObjectMap();
+		instance.leaseID = 0;
+		instance.forcedTotal = 0;
 		MinecraftForge.EVENT_BUS.register(instance);
 		File file = Helper.getSaveFile("chunks.dat");
 		if(file.exists())
@@ -47,22 +139,48 @@ public final class ChunkLoader implements LoadingCallback{
 				DataInputStream dis = new DataInputStream(fis);
 				int dims = dis.readInt();
 				for(int i = 0; i < dims; i++){
-					instance.dims.add(dis.readInt());
+					dis.readInt(); // no longer loaded eagerly, see forceReloadChunks.
+				}
+				if(dis.available() > 0){ // older files only have the dimensions.
+					instance.leaseID = dis.readLong();
+					int leases = dis.readInt();
+					for(int i = 0; i < leases; i++){
+						long id = dis.readLong();
+						int dim = dis.readInt();
+						long expires = dis.readLong();
+						long[] chunks = new long[dis.readInt()];
+						for(int c = 0; c < chunks.length; c++){
+							chunks[c] = key(dis.readInt(), dis.readInt());
+						}
+						instance.restore(new Lease(id, dim, chunks, expires));
+					}
 				}
 				dis.close();
 			}catch(Exception e){
 				e.printStackTrace();
 			}
+		instance.start();
 	}
 	
-	public static void unload(){
-		ArrayList<Integer> dims = new ArrayList();
-		for(Ticket ticket : instance.tickets){
-			Integer dim = ticket.world.provider.getDimension();
-			if(!dims.contains(dim)){
-				dims.add(dim);
-			}
+	/**
+	 * The overworld, nether and end are loaded before the server starts, so their tickets
+	 * came in before the leases were read and their load events are long gone.
+	 * Catch up on those now.
+	 */
+	private synchronized void start(){
+		ready = true;
+		for(Ticket ticket : early){
+			adopt(ticket);
+		}
+		early.clear();
+		for(World world : DimensionManager.getWorlds()){
+			if(!world.isRemote) forceMissing(world);
 		}
+	}
+	
+	public static void unload(){
+		MinecraftForge.EVENT_BUS.unregister(instance);
+		ArrayList<Integer> dims = getForcedDimensions();
 		try{
 			File file = Helper.getSaveFile("chunks.dat");
 			if(!file.exists()){
@@ -74,80 +192,390 @@ public final class ChunkLoader implements LoadingCallback{
 			for(Integer dim : dims){
 				dos.writeInt(dim.intValue());
 			}
+			dos.writeLong(instance.leaseID);
+			dos.writeInt(instance.leases.size());
+			for(Lease lease : instance.leases.values()){
+				dos.writeLong(lease.id);
+				dos.writeInt(lease.dimension);
+				dos.writeLong(lease.expires);
+				dos.writeInt(lease.chunks.length);
+				for(long chunk : lease.chunks){
+					dos.writeInt((int)(chunk >> 32));
+					dos.writeInt((int) chunk);
+				}
+			}
 			dos.close();
 		}catch(Exception e){
 			e.printStackTrace();
-			
+		
 		}
+		instance.ready = false;
+		instance.early.clear();
+		instance.leases.clear();
+		instance.dimensions.clear();
 	}
 	
-	@SubscribeEvent
-	public void forceReloadChunks(WorldEvent.Load evt){
-		if(evt.getWorld().provider.getDimension() == 0){
-			MinecraftServer server = FMLServerHandler.instance().getServer();
-			for(Integer dim : instance.dims){
-				server.worldServerForDimension(dim.intValue());
+	/**
+	 * Counts a lease read from disk. Its chunks are forced when its world loads.
+	 */
+	private void restore(Lease lease){
+		Dimension dimension = dimension(lease.dimension);
+		for(long chunk : lease.chunks){
+			ForcedChunk forced = dimension.chunks.get(chunk);
+			if(forced == null){
+				forced = new ForcedChunk(new ChunkPos((int)(chunk >> 32), (int) chunk));
+				dimension.chunks.put(chunk, forced);
+				forcedTotal++;
 			}
-			//StargateNetwork.instance().initializeWormholes();
-			MinecraftForge.EVENT_BUS.unregister(this);
+			forced.refs++;
 		}
+		leases.put(lease.id, lease);
+	}
+	
+	/**
+	 * Dimensions aren't loaded here, they're loaded by whoever still needs them,
+	 * and their leased chunks are forced again as they come up.
+	 */
+	@SubscribeEvent
+	public void forceReloadChunks(WorldEvent.Load evt){
+		World world = evt.getWorld();
+		if(world.isRemote || !ready) return;
+		forceMissing(world);
+	}
+	
+	@SubscribeEvent
+	public void onServerTick(TickEvent.ServerTickEvent evt){
+		if(evt.phase != TickEvent.Phase.END) return;
+		long now = now();
+		if(now % SWEEP_INTERVAL == 0) releaseExpired(now);
 	}
 	
 	@Override
-	public void ticketsLoaded(List<Ticket> tickets, World world) {
+	public synchronized void ticketsLoaded(List<Ticket> tickets, World world) {
+		if(!ready){ // the leases aren't known yet, hold on to these until load() runs.
+			early.addAll(tickets);
+			return;
+		}
 		for(Ticket ticket : tickets){
-			instance.tickets.add(ticket);
-			NBTTagCompound data = ticket.getModData();
-			int chunks = data.getInteger("chunks");
-			for(int c = 0; c < chunks; c++){
-				int x = data.getInteger("cX_" + c);
-				int z = data.getInteger("cZ_" + c);
-				ForgeChunkManager.forceChunk(ticket, new ChunkPos(x, z));
+			adopt(ticket);
+		}
+		forceMissing(world);
+	}
+	
+	/**
+	 * Re-forces the chunks of a saved ticket that are still leased, and releases it if none are.
+	 */
+	private void adopt(Ticket ticket){
+		Dimension dimension = dimension(ticket.world.provider.getDimension());
+		NBTTagCompound data = ticket.getModData();
+		if(data.hasKey("chunks") && !data.hasKey(KEY_CHUNKS)){
+			migrate(ticket.world.provider.getDimension(), data);
+		}
+		int[] chunks = data.getIntArray(KEY_CHUNKS);
+		for(int c = 0; c + 1 < chunks.length; c += 2){
+			ForcedChunk forced = dimension.chunks.get(key(chunks[c], chunks[c + 1]));
+			// Only keep the chunks that are still leased and not forced elsewhere already.
+			if(forced != null && forced.ticket == null){
+				ForgeChunkManager.forceChunk(ticket, forced.pos);
+				forced.ticket = ticket;
+			}
+		}
+		if(ticket.getChunkList().isEmpty()){
+			ForgeChunkManager.releaseTicket(ticket);
+		}else{
+			writeChunks(ticket);
+			dimension.tickets.add(ticket);
+		}
+	}
+	
+	/**
+	 * Tickets from before leases held one lease each, under its "ticketID", with the chunks
+	 * stored as "cX_n" / "cZ_n". Turn that into a lease with the same id, so the wormholes
+	 * saved with those ids still release it, and into the current chunk list.
+	 */
+	private void migrate(int dim, NBTTagCompound data){
+		int count = data.getInteger("chunks");
+		long[] keys = new long[count];
+		int found = 0;
+		for(int c = 0; c < count; c++){
+			if(!data.hasKey("cX_" + c) || !data.hasKey("cZ_" + c)) continue;
+			long key = key(data.getInteger("cX_" + c), data.getInteger("cZ_" + c));
+			boolean duplicate = false;
+			for(int i = 0; i < found && !duplicate; i++){
+				duplicate = keys[i] == key;
 			}
+			if(!duplicate) keys[found++] = key;
+		}
+		long id = data.getLong("ticketID");
+		if(found > 0 && !leases.containsKey(id)){
+			long[] chunks = new long[found];
+			System.arraycopy(keys, 0, chunks, 0, found);
+			restore(new Lease(id, dim, chunks, 0));
+			leaseID = Math.max(leaseID, id + 1);
+		}
+		int[] list = new int[found * 2];
+		for(int i = 0; i < found; i++){
+			list[i * 2] = (int)(keys[i] >> 32);
+			list[i * 2 + 1] = (int) keys[i];
 		}
+		for(int c = 0; c < count; c++){
+			data.removeTag("cX_" + c);
+			data.removeTag("cZ_" + c);
+		}
+		data.removeTag("chunks");
+		data.removeTag("ticketID");
+		data.setIntArray(KEY_CHUNKS, list);
+		StargateLogger.info("Migrated chunk ticket " + id + " in dimension " + dim + " with " + found + " chunks.");
 	}
 	
+	/**
+	 * Forces every leased chunk of this world that isn't on a ticket yet.
+	 */
+	private synchronized void forceMissing(World world){
+		Dimension dimension = dimensions.get(world.provider.getDimension());
+		if(dimension == null) return;
+		for(ForcedChunk forced : dimension.chunks.values()){
+			if(forced.ticket == null && !force(world, dimension, forced)){
+				StargateLogger.warning("Ran out of chunk loading tickets while restoring dimension " + world.provider.getDimension());
+				return;
+			}
+		}
+	}
+	
+	// ##################################################################
+	// Leases
+	
 	public static long load9Chunks(World world, int x, int z){
+		return load9Chunks(world, x, z, 0);
+	}
+	
+	public static long load9Chunks(World world, int x, int z, int ttl){
 		ArrayList<ChunkPos> chunks = new ArrayList();
 		for(int i = -1; i < 2; i++){
 			for(int j = -1; j < 2; j++){
 				chunks.add(new ChunkPos(x + i, z + j));
 			}
 		}
-		return loadChunks(world, chunks);
+		return loadChunks(world, chunks, ttl);
+	}
+	
+	public static long loadChunks(World world, List<ChunkPos> chunks){
+		return loadChunks(world, chunks, 0);
 	}
 	
-	public synchronized static long loadChunks(World world, List<ChunkPos> chunks){
-		Ticket ticket = ForgeChunkManager.requestTicket(StargateTech2.instance, world, Type.NORMAL);
-		if(ticket != null){
-			NBTTagCompound data = ticket.getModData();
-			int chunkID = 0;
-			data.setInteger("chunks", chunks.size());
-			for(ChunkPos chunk : chunks){
-				ForgeChunkManager.forceChunk(ticket, chunk);
-				data.setInteger("cX_" + chunkID, chunk.chunkXPos);
-				data.setInteger("cZ_" + chunkID, chunk.chunkZPos);
+	/**
+	 * Keeps the given chunks loaded until the lease is released, evicted, or has lived for ttl ticks.
+	 *
+	 * @param ttl How many ticks the lease lives at most, 0 for no limit.
+	 * @return The id of the lease, {@link #NO_TICKET} or {@link #OVER_BUDGET}.
+	 */
+	public synchronized static long loadChunks(World world, List<ChunkPos> chunks, int ttl){
+		int dim = world.provider.getDimension();
+		Dimension dimension = instance.dimension(dim);
+		if(!instance.makeRoom(dim, dimension, chunks)) return OVER_BUDGET;
+		long[] keys = new long[chunks.size()];
+		int acquired = 0;
+		for(ChunkPos chunk : chunks){
+			long key = key(chunk.chunkXPos, chunk.chunkZPos);
+			ForcedChunk forced = dimension.chunks.get(key);
+			if(forced == null){
+				forced = new ForcedChunk(chunk);
+				if(!instance.force(world, dimension, forced)){
+					instance.unreference(dimension, keys, acquired);
+					return NO_TICKET;
+				}
+				dimension.chunks.put(key, forced);
+				instance.forcedTotal++;
 			}
-			long id = instance.ticketID;
-			data.setLong("ticketID", id);
-			instance.ticketID++;
-			instance.tickets.add(ticket);
-			return id;
+			forced.refs++;
+			keys[acquired++] = key;
+		}
+		long id = instance.leaseID++;
+		instance.leases.put(id, new Lease(id, dim, keys, ttl > 0 ? now() + ttl : 0));
+		return id;
+	}
+	
+	public synchronized static void release(long lease){
+		if(lease < 0) return;
+		Lease found = instance.leases.remove(lease);
+		if(found == null) return;
+		Dimension dimension = instance.dimensions.get(found.dimension);
+		if(dimension != null) instance.unreference(dimension, found.chunks, found.chunks.length);
+	}
+	
+	/**
+	 * Sets who is told if this lease gets evicted.
+	 */
+	public synchronized static void setHolder(long lease, ILeaseHolder holder){
+		Lease found = instance.leases.get(lease);
+		if(found != null) found.holder = holder;
+	}
+	
+	/**
+	 * Marks a lease as in use, so it's among the last to be evicted.
+	 */
+	public static void touch(long lease){
+		Lease found = instance.leases.get(lease);
+		if(found != null) found.lastUsed = now();
+	}
+	
+	// ##################################################################
+	// Budget
+	
+	/**
+	 * Evicts leases until these chunks fit in the budget.
+	 *
+	 * @return false if they can't fit, even with everything evictable gone.
+	 */
+	private boolean makeRoom(int dim, Dimension dimension, List<ChunkPos> chunks){
+		int perDimension = ConfigServer.forcedChunksPerDimension;
+		int total = ConfigServer.forcedChunksTotal;
+		if((perDimension > 0 && chunks.size() > perDimension) || (total > 0 && chunks.size() > total)) return false;
+		int needed = countNew(dimension, chunks);
+		while(true){
+			boolean overDimension = perDimension > 0 && dimension.chunks.size() + needed > perDimension;
+			boolean overTotal = total > 0 && forcedTotal + needed > total;
+			if(!overDimension && !overTotal) return true;
+			Lease victim = pickVictim(overDimension ? dim : null);
+			if(victim == null) return false;
+			evict(victim);
+			needed = countNew(dimension, chunks);
+		}
+	}
+	
+	private static int countNew(Dimension dimension, List<ChunkPos> chunks){
+		int count = 0;
+		for(ChunkPos chunk : chunks){
+			if(!dimension.chunks.containsKey(key(chunk.chunkXPos, chunk.chunkZPos))) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return An expired lease if there is one, else the least recently used lease that has been idle
+	 * for a while, optionally only in the given dimension. Null if no lease can be evicted.
+	 */
+	private Lease pickVictim(Integer dim){
+		long now = now();
+		Lease victim = null;
+		for(Lease lease : leases.values()){
+			if(dim != null && lease.dimension != dim.intValue()) continue;
+			if(lease.hasExpired(now)) return lease;
+			if(now - lease.lastUsed < MIN_IDLE_TICKS) continue;
+			if(victim == null || lease.lastUsed < victim.lastUsed) victim = lease;
 		}
-		return -1L;
+		return victim;
 	}
 	
-	public synchronized static void release(long ticket){
-		if(ticket < 0) return; 
-		Ticket found = null;
-		for(Ticket t : instance.tickets){
-			if(ticket == t.getModData().getLong("ticketID")){
-				found = t;
+	private void evict(Lease lease){
+		StargateLogger.info("Evicting chunk lease " + lease.id + " in dimension " + lease.dimension + " to stay within the chunk loading budget.");
+		release(lease.id);
+		if(lease.holder != null) lease.holder.onLeaseEvicted(lease.id);
+	}
+	
+	private synchronized void releaseExpired(long now){
+		ArrayList<Lease> expired = null;
+		for(Lease lease : leases.values()){
+			if(lease.hasExpired(now)){
+				if(expired == null) expired = new ArrayList();
+				expired.add(lease);
+			}
+		}
+		if(expired == null) return;
+		for(Lease lease : expired){
+			release(lease.id);
+			if(lease.holder != null) lease.holder.onLeaseEvicted(lease.id);
+		}
+	}
+	
+	// ##################################################################
+	// Usage
+	
+	/**
+	 * @return How many leases are currently held.
+	 */
+	public static int leaseCount(){
+		return instance.leases.size();
+	}
+	
+	/**
+	 * @return How many chunks are forced across every dimension.
+	 */
+	public static int forcedCount(){
+		return instance.forcedTotal;
+	}
+	
+	/**
+	 * @return How many chunks are forced in this dimension.
+	 */
+	public static int forcedCount(int dim){
+		Dimension dimension = instance.dimensions.get(dim);
+		return dimension == null ? 0 : dimension.chunks.size();
+	}
+	
+	/**
+	 * @return Every dimension that currently has forced chunks.
+	 */
+	public synchronized static ArrayList<Integer> getForcedDimensions(){
+		ArrayList<Integer> dims = new ArrayList();
+		for(Lease lease : instance.leases.values()){
+			Integer dim = lease.dimension;
+			if(!dims.contains(dim)){
+				dims.add(dim);
+			}
+		}
+		return dims;
+	}
+	
+	private void unreference(Dimension dimension, long[] keys, int count){
+		for(int i = 0; i < count; i++){
+			ForcedChunk forced = dimension.chunks.get(keys[i]);
+			if(forced == null || --forced.refs > 0) continue;
+			dimension.chunks.remove(keys[i]);
+			forcedTotal--;
+			Ticket ticket = forced.ticket;
+			if(ticket == null) continue;
+			ForgeChunkManager.unforceChunk(ticket, forced.pos);
+			if(ticket.getChunkList().isEmpty()){
+				dimension.tickets.remove(ticket);
+				ForgeChunkManager.releaseTicket(ticket);
+			}else{
+				writeChunks(ticket);
+			}
+		}
+	}
+	
+	/**
+	 * Puts a chunk on a ticket with room left, requesting a new ticket if they're all full.
+	 */
+	private boolean force(World world, Dimension dimension, ForcedChunk forced){
+		Ticket ticket = null;
+		for(int i = 0; i < dimension.tickets.size(); i++){
+			Ticket t = dimension.tickets.get(i);
+			if(t.getChunkList().size() < t.getMaxChunkListDepth()){
+				ticket = t;
 				break;
 			}
 		}
-		if(found == null) return;
-		instance.tickets.remove(found);
-		ForgeChunkManager.releaseTicket(found);
+		if(ticket == null){
+			ticket = ForgeChunkManager.requestTicket(StargateTech2.instance, world, Type.NORMAL);
+			if(ticket == null) return false;
+			dimension.tickets.add(ticket);
+		}
+		ForgeChunkManager.forceChunk(ticket, forced.pos);
+		forced.ticket = ticket;
+		writeChunks(ticket);
+		return true;
+	}
+	
+	private static void writeChunks(Ticket ticket){
+		int[] data = new int[ticket.getChunkList().size() * 2];
+		int i = 0;
+		for(ChunkPos chunk : ticket.getChunkList()){
+			data[i++] = chunk.chunkXPos;
+			data[i++] = chunk.chunkZPos;
+		}
+		NBTTagCompound modData = ticket.getModData();
+		modData.setIntArray(KEY_CHUNKS, data);
 	}
-}
\ No newline at end of file
+}
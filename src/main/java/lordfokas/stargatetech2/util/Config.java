@@ -56,6 +56,13 @@ public class Config {
 		ConfigServer.shieldEmitterRange = cfg.getInt("shieldEmitterRange", ConfigReference.KEY_CFG_SERVER, ConfigServer.shieldEmitterRange, 3, 12, "The maximum gap between Shield Emitter pairs.");
 		int minDistance = cfg.getInt("stargateMinDistance", ConfigReference.KEY_CFG_SERVER, 150, 50, 100000000, "The minimum diagonal distance, in blocks, between two stargates.");
 		ConfigServer.stargateMinDistance = minDistance * minDistance;
+		ConfigServer.dialBurst = cfg.getInt("dialBurst", ConfigReference.KEY_CFG_SERVER, ConfigServer.dialBurst, 0, 1000, "How many times a Stargate can dial in a row before being throttled. 0 = No limit.");
+		ConfigServer.dialRefillTicks = cfg.getInt("dialRefillTicks", ConfigReference.KEY_CFG_SERVER, ConfigServer.dialRefillTicks, 1, 72000, "How many ticks it takes a throttled Stargate to earn another dialing attempt.");
+		ConfigServer.teleportsPerTick = cfg.getInt("teleportsPerTick", ConfigReference.KEY_CFG_SERVER, ConfigServer.teleportsPerTick, 1, 1000, "How many entities can go through Stargates each tick. The rest wait for the next tick.");
+		ConfigServer.transitBufferKB = cfg.getInt("transitBufferKB", ConfigReference.KEY_CFG_SERVER, ConfigServer.transitBufferKB, 16, 65536, "How much data, in KB, each open wormhole can hold for entities on their way out. When full, entities wait at the event horizon.");
+		ConfigServer.forcedChunksPerDimension = cfg.getInt("forcedChunksPerDimension", ConfigReference.KEY_CFG_SERVER, ConfigServer.forcedChunksPerDimension, 0, 100000, "How many chunks Stargates can keep loaded in a single dimension. Each open wormhole uses 9 on each side. 0 = No limit.");
+		ConfigServer.forcedChunksTotal = cfg.getInt("forcedChunksTotal", ConfigReference.KEY_CFG_SERVER, ConfigServer.forcedChunksTotal, 0, 100000, "How many chunks Stargates can keep loaded across all dimensions. 0 = No limit.");
+		ConfigServer.busPacketsPerTick = cfg.getInt("busPacketsPerTick", ConfigReference.KEY_CFG_SERVER, ConfigServer.busPacketsPerTick, 1, 10000, "How many queued packets each Abstract Bus network delivers per tick. The rest wait for the next tick.");
 		
 		// WORLDGEN CONFIGS
 		ConfigServer.wgLootPodGap = cfg.getInt("lootPodSpacing", ConfigReference.KEY_CFG_SV_WGEN, ConfigServer.wgLootPodGap, 6, 100, "The minimum distance, in chunks, between two Loot Pods.");
@@ -3,6 +3,13 @@ package lordfokas.stargatetech2.util;
 public class ConfigServer {
 	public static int shieldEmitterRange = 5;
 	public static int stargateMinDistance = 150;
+	public static int dialBurst = 5;
+	public static int dialRefillTicks = 100;
+	public static int teleportsPerTick = 32;
+	public static int transitBufferKB = 256;
+	public static int forcedChunksPerDimension = 0;
+	public static int forcedChunksTotal = 0;
+	public static int busPacketsPerTick = 64;
 	
 	public static int wgLootPodGap = 8;
 	public static int wgLootPodOdd = 6;
@@ -0,0 +1,185 @@
+package lordfokas.stargatetech2.util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open addressing hash map with primitive long keys.
+ * Uses linear probing with backward shift deletion, so lookups
+ * never allocate and there are no tombstones to clean up.
+ *
+ * Null values are not allowed, a null slot means the slot is free.
+ */
+public class LongObjectMap<V> {
+	private static final int MIN_CAPACITY = 16;
+	
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+	
+	public LongObjectMap(){
+		this(MIN_CAPACITY);
+	}
+	
+	public LongObjectMap(int expected){
+		int capacity = MIN_CAPACITY;
+		while(capacity * 3 / 4 < expected){
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+	
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeAt = capacity * 3 / 4;
+	}
+	
+	private static int mix(long key){
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+	
+	private int slotOf(long key){
+		int slot = mix(key) & mask;
+		while(values[slot] != null){
+			if(keys[slot] == key) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	public V get(long key){
+		int slot = slotOf(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+	
+	public boolean containsKey(long key){
+		return slotOf(key) >= 0;
+	}
+	
+	/**
+	 * @return The value previously mapped to the key, if any.
+	 */
+	public V put(long key, V value){
+		if(value == null) throw new IllegalArgumentException("LongObjectMap values must not be null!");
+		int slot = mix(key) & mask;
+		while(values[slot] != null){
+			if(keys[slot] == key){
+				V old = (V) values[slot];
+				values[slot] = value;
+				return old;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if(++size > resizeAt){
+			rehash(keys.length << 1);
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The value that was mapped to the key, if any.
+	 */
+	public V remove(long key){
+		int slot = slotOf(key);
+		if(slot < 0) return null;
+		V old = (V) values[slot];
+		size--;
+		// Shift back the entries that probed past the freed slot.
+		int free = slot;
+		int next = (free + 1) & mask;
+		while(values[next] != null){
+			int home = mix(keys[next]) & mask;
+			if(((next - home) & mask) >= ((next - free) & mask)){
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[free] = null;
+		return old;
+	}
+	
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for(int i = 0; i < oldValues.length; i++){
+			if(oldValues[i] != null){
+				int slot = mix(oldKeys[i]) & mask;
+				while(values[slot] != null){
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	public void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+	
+	/**
+	 * @return A live view of the values in this map. Do not modify the map while iterating.
+	 */
+	public Collection<V> values(){
+		return new AbstractCollection<V>(){
+			@Override
+			public Iterator<V> iterator(){
+				return new Iterator<V>(){
+					private int slot = advance(0);
+					
+					private int advance(int from){
+						while(from < values.length && values[from] == null) from++;
+						return from;
+					}
+					
+					@Override
+					public boolean hasNext(){
+						return slot < values.length;
+					}
+					
+					@Override
+					public V next(){
+						if(slot >= values.length) throw new NoSuchElementException();
+						V value = (V) values[slot];
+						slot = advance(slot + 1);
+						return value;
+					}
+					
+					@Override
+					public void remove(){
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+			
+			@Override
+			public int size(){
+				return size;
+			}
+		};
+	}
+}